@@ -1,14 +1,82 @@
 package ru.practicum.main.config;
 
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import ru.practicum.stats.client.BreakerState;
+import ru.practicum.stats.client.CircuitBreaking;
+import ru.practicum.stats.client.HitBatching;
+import ru.practicum.stats.client.StatsCaching;
 import ru.practicum.stats.client.StatsClient;
+import ru.practicum.stats.client.StatsClientSettings;
+import ru.practicum.stats.client.StatsTransport;
+import ru.practicum.stats.client.WireFormat;
+
+import java.time.Duration;
+import java.util.Locale;
 
 @Configuration
 public class StatsClientConfig {
     @Bean
-    public StatsClient statsClient(@Value("${stats.server.url:http://localhost:9090}") String serverUrl) {
-        return new StatsClient(serverUrl);
+    public StatsClient statsClient(@Value("${stats.server.url:http://localhost:9090}") String serverUrl,
+                                   @Value("${stats.client.wire-format:JSON}") WireFormat wireFormat,
+                                   @Value("${stats.client.hits.async:false}") boolean async,
+                                   @Value("${stats.client.hits.capacity:10000}") int capacity,
+                                   @Value("${stats.client.hits.batch-size:500}") int batchSize,
+                                   @Value("${stats.client.hits.flush-interval:200ms}") Duration flushInterval,
+                                   @Value("${stats.client.hits.max-attempts:5}") int maxAttempts,
+                                   @Value("${stats.client.hits.retry-backoff:100ms}") Duration retryBackoff,
+                                   @Value("${stats.client.cache.enabled:false}") boolean cache,
+                                   @Value("${stats.client.cache.max-size:10000}") long cacheSize,
+                                   @Value("${stats.client.cache.refresh-after:5s}") Duration refreshAfter,
+                                   @Value("${stats.client.cache.expire-after:1m}") Duration expireAfter,
+                                   @Value("${stats.client.connect-timeout:2s}") Duration connectTimeout,
+                                   @Value("${stats.client.read-timeout:5s}") Duration readTimeout,
+                                   @Value("${stats.client.http2:true}") boolean http2,
+                                   @Value("${stats.client.breaker.enabled:true}") boolean breaker,
+                                   @Value("${stats.client.breaker.window-size:50}") int windowSize,
+                                   @Value("${stats.client.breaker.minimum-calls:10}") int minimumCalls,
+                                   @Value("${stats.client.breaker.failure-rate:0.5}") double failureRate,
+                                   @Value("${stats.client.breaker.open-duration:10s}") Duration openDuration,
+                                   @Value("${stats.client.breaker.half-open-probes:3}") int halfOpenProbes,
+                                   @Value("${stats.client.breaker.fallback-size:10000}") long fallbackSize,
+                                   MeterRegistry registry) {
+        HitBatching batching = async
+                ? new HitBatching(capacity, batchSize, flushInterval, maxAttempts, retryBackoff)
+                : null;
+        StatsCaching caching = cache ? new StatsCaching(cacheSize, refreshAfter, expireAfter) : null;
+        CircuitBreaking breaking = breaker
+                ? new CircuitBreaking(windowSize, minimumCalls, failureRate, openDuration, halfOpenProbes, fallbackSize)
+                : null;
+        StatsClient client = new StatsClient(StatsClientSettings.builder()
+                .serverUrl(serverUrl)
+                .wireFormat(wireFormat)
+                .transport(new StatsTransport(connectTimeout, readTimeout, http2))
+                .hitBatching(batching)
+                .caching(caching)
+                .breaking(breaking)
+                .build());
+        FunctionCounter.builder("stats.client.hits.sent", client, StatsClient::hitsSent)
+                .description("Hits delivered to the stats server by the background sender")
+                .register(registry);
+        FunctionCounter.builder("stats.client.hits.dropped", client, StatsClient::hitsDropped)
+                .description("Hits dropped because the queue was full or sending kept failing")
+                .register(registry);
+        Gauge.builder("stats.client.hits.queue", client, StatsClient::hitQueueDepth)
+                .description("Hits waiting to be sent to the stats server")
+                .register(registry);
+        Gauge.builder("stats.client.breaker.state", client, c -> c.breakerState().ordinal())
+                .description("Stats lookup circuit breaker state: 0 closed, 1 half-open, 2 open")
+                .register(registry);
+        for (BreakerState state : BreakerState.values()) {
+            FunctionCounter.builder("stats.client.breaker.transitions", client, c -> c.breakerTransitions(state))
+                    .description("Stats lookup circuit breaker transitions into a state")
+                    .tag("state", state.name().toLowerCase(Locale.ROOT))
+                    .register(registry);
+        }
+        return client;
     }
-}
\ No newline at end of file
+}
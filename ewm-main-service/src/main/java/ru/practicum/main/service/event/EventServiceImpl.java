@@ -22,7 +22,6 @@ import ru.practicum.main.repository.UserRepository;
 import ru.practicum.main.service.rating.RatingService;
 import ru.practicum.stats.client.StatsClient;
 import ru.practicum.stats.dto.HitDto;
-import ru.practicum.stats.dto.ViewStatsDto;
 
 import java.time.LocalDateTime;
 import java.util.*;
@@ -34,6 +33,9 @@ import java.util.stream.Collectors;
 @Slf4j
 public class EventServiceImpl implements EventService {
 
+    /* Fixed rather than relative to now, so repeated view lookups share a stats client cache entry. */
+    private static final LocalDateTime VIEWS_SINCE = LocalDateTime.of(2000, 1, 1, 0, 0);
+
     private final EventRepository eventRepository;
     private final UserRepository userRepository;
     private final CategoryRepository categoryRepository;
@@ -95,8 +97,10 @@ public class EventServiceImpl implements EventService {
     public List<EventShortDto> getUserEvents(Long userId, int from, int size) {
         if (!userRepository.existsById(userId)) throw new NotFoundException("User not found");
         Pageable pageable = PageRequest.of(from / size, size, Sort.by(Sort.Direction.DESC, "id"));
-        return eventRepository.findAllByInitiatorId(userId, pageable).getContent().stream()
-                .map(this::enrichShortDto)
+        List<Event> events = eventRepository.findAllByInitiatorId(userId, pageable).getContent();
+        Map<Long, Long> views = fetchViews(events);
+        return events.stream()
+                .map(e -> enrichShortDto(e, views.getOrDefault(e.getId(), 0L)))
                 .collect(Collectors.toList());
     }
 
@@ -181,8 +185,9 @@ public class EventServiceImpl implements EventService {
             comparator = Comparator.comparing(EventShortDto::getEventDate);
         }
 
+        Map<Long, Long> views = fetchViews(page.getContent());
         return page.getContent().stream()
-                .map(this::enrichShortDto)
+                .map(e -> enrichShortDto(e, views.getOrDefault(e.getId(), 0L)))
                 .sorted(comparator)
                 .collect(Collectors.toList());
     }
@@ -212,8 +217,10 @@ public class EventServiceImpl implements EventService {
                 .and(categories == null || categories.isEmpty() ? null : inCategories(categories));
 
         Pageable pageable = PageRequest.of(from / size, size, Sort.by("id"));
-        return eventRepository.findAll(spec, pageable).getContent().stream()
-                .map(this::enrichFullDto)
+        List<Event> events = eventRepository.findAll(spec, pageable).getContent();
+        Map<Long, Long> views = fetchViews(events);
+        return events.stream()
+                .map(e -> enrichFullDtoWithViews(e, views.getOrDefault(e.getId(), 0L)))
                 .collect(Collectors.toList());
     }
 
@@ -266,8 +273,7 @@ public class EventServiceImpl implements EventService {
         return EventMapper.toFull(e, catDto, userDto, views, confirmed, rating);
     }
 
-    private EventShortDto enrichShortDto(Event e) {
-        long views = fetchViews(e.getId());
+    private EventShortDto enrichShortDto(Event e, long views) {
         long confirmed = requestRepository.countByEventIdAndStatus(e.getId(), RequestStatus.CONFIRMED);
         Category cat = categoryRepository.findById(e.getCategoryId()).orElse(null);
         CategoryDto catDto = cat != null ? new CategoryDto(cat.getId(), cat.getName()) : null;
@@ -280,16 +286,22 @@ public class EventServiceImpl implements EventService {
     }
 
     private long fetchViews(Long eventId) {
+        return fetchViewsByIds(List.of(eventId)).getOrDefault(eventId, 0L);
+    }
+
+    private Map<Long, Long> fetchViews(List<Event> events) {
+        return fetchViewsByIds(events.stream().map(Event::getId).collect(Collectors.toList()));
+    }
+
+    /* One stats request for the whole page; events are shown with 0 views when the stats server is down. */
+    private Map<Long, Long> fetchViewsByIds(Collection<Long> eventIds) {
         try {
-            List<ViewStatsDto> stats = statsClient.getStats(
-                    LocalDateTime.now().minusYears(100),
+            return statsClient.getViews(eventIds,
+                    VIEWS_SINCE,
                     LocalDateTime.now().plusSeconds(1),
-                    List.of("/events/" + eventId),
-                    true
-            );
-            return stats.isEmpty() ? 0 : stats.get(0).getHits();
+                    true);
         } catch (Exception e) {
-            return 0;
+            return Map.of();
         }
     }
 
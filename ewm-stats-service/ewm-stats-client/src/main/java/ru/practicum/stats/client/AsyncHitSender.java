@@ -0,0 +1,130 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.stats.dto.HitDto;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Queues hits without blocking the caller and sends them in batches from a single daemon thread.
+ * The queue is a {@link ConcurrentLinkedQueue} bounded by a separate size counter, so {@link #offer} never
+ * takes a lock: a hit that finds the queue full is dropped and counted. A failed batch is retried with
+ * exponential backoff and full jitter, and dropped once {@link HitBatching#maxAttempts()} are used up.
+ */
+@Slf4j
+class AsyncHitSender implements AutoCloseable {
+
+    private static final long SHUTDOWN_TIMEOUT_MILLIS = 5_000;
+    private static final long MAX_BACKOFF_MILLIS = 10_000;
+
+    private final Consumer<List<HitDto>> batchSender;
+    private final HitBatching settings;
+    private final Queue<HitDto> queue = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Thread sender;
+    private volatile boolean running = true;
+
+    AsyncHitSender(Consumer<List<HitDto>> batchSender, HitBatching settings) {
+        this.batchSender = batchSender;
+        this.settings = settings;
+        this.sender = new Thread(this::run, "stats-hit-sender");
+        this.sender.setDaemon(true);
+        this.sender.start();
+    }
+
+    void offer(HitDto hit) {
+        if (!running) {
+            dropped.increment();
+            return;
+        }
+        if (size.incrementAndGet() > settings.capacity()) {
+            size.decrementAndGet();
+            dropped.increment();
+            return;
+        }
+        queue.offer(hit);
+        if (size.get() >= settings.batchSize()) {
+            LockSupport.unpark(sender);
+        }
+    }
+
+    long sent() {
+        return sent.sum();
+    }
+
+    long dropped() {
+        return dropped.sum();
+    }
+
+    int queueDepth() {
+        return size.get();
+    }
+
+    /**
+     * Stops taking hits and gives the sender a few seconds to deliver what is queued.
+     */
+    @Override
+    public void close() {
+        running = false;
+        LockSupport.unpark(sender);
+        try {
+            sender.join(SHUTDOWN_TIMEOUT_MILLIS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void run() {
+        long flushNanos = settings.flushInterval().toNanos();
+        while (running || size.get() > 0) {
+            if (running && size.get() < settings.batchSize()) {
+                LockSupport.parkNanos(flushNanos);
+            }
+            List<HitDto> batch = drain();
+            if (!batch.isEmpty()) {
+                send(batch);
+            }
+        }
+    }
+
+    private List<HitDto> drain() {
+        List<HitDto> batch = new ArrayList<>(Math.min(size.get(), settings.batchSize()));
+        HitDto hit;
+        while (batch.size() < settings.batchSize() && (hit = queue.poll()) != null) {
+            size.decrementAndGet();
+            batch.add(hit);
+        }
+        return batch;
+    }
+
+    private void send(List<HitDto> batch) {
+        long backoff = settings.retryBackoff().toMillis();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                batchSender.accept(batch);
+                sent.add(batch.size());
+                return;
+            } catch (RuntimeException e) {
+                // while shutting down a batch gets one retry, so close() is not held up by a dead server
+                if (attempt >= settings.maxAttempts() || (!running && attempt > 1)) {
+                    dropped.add(batch.size());
+                    log.warn("Dropped {} stats hits after {} attempts: {}", batch.size(), attempt, e.getMessage());
+                    return;
+                }
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(ThreadLocalRandom.current().nextLong(backoff + 1)));
+            backoff = Math.min(backoff * 2, MAX_BACKOFF_MILLIS);
+        }
+    }
+}
@@ -0,0 +1,13 @@
+package ru.practicum.stats.client;
+
+/**
+ * State of the {@link StatsClient} circuit breaker around stats lookups.
+ */
+public enum BreakerState {
+    /** Calls go to the server; outcomes are recorded. */
+    CLOSED,
+    /** A few probe calls are let through to see whether the server is back. */
+    HALF_OPEN,
+    /** Calls are not made; lookups are answered from the last known results. */
+    OPEN
+}
@@ -0,0 +1,135 @@
+package ru.practicum.stats.client;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Count-based circuit breaker. While closed it keeps the outcomes of the last {@code windowSize} calls in a
+ * ring and opens once the failure rate reaches the threshold. After {@code openDuration} it lets
+ * {@code halfOpenProbes} calls through: if all of them succeed it closes, and any failure opens it again.
+ * Each permit carries the generation of the state it was taken in, and an outcome only counts while that state
+ * lasts: a call let through while closed never counts as a half-open probe, and late outcomes are ignored.
+ */
+@Slf4j
+class CircuitBreaker {
+
+    static final long REFUSED = -1;
+
+    private final CircuitBreaking settings;
+    private final long openNanos;
+    private final boolean[] failed;
+    private final Map<BreakerState, LongAdder> transitions = new EnumMap<>(BreakerState.class);
+
+    private volatile BreakerState state = BreakerState.CLOSED;
+    private long generation;
+    private int next;
+    private int recorded;
+    private int failures;
+    private long openedAt;
+    private int probesStarted;
+    private int probesSucceeded;
+
+    CircuitBreaker(CircuitBreaking settings) {
+        this.settings = settings;
+        this.openNanos = settings.openDuration().toNanos();
+        this.failed = new boolean[settings.windowSize()];
+        for (BreakerState target : BreakerState.values()) {
+            transitions.put(target, new LongAdder());
+        }
+    }
+
+    /**
+     * A permit for a call to the server now, or {@link #REFUSED}. A permitted call must report back with its
+     * permit through {@link #onSuccess} or {@link #onFailure}, whatever way it ends.
+     */
+    synchronized long tryAcquire() {
+        if (state == BreakerState.OPEN) {
+            if (System.nanoTime() - openedAt < openNanos) {
+                return REFUSED;
+            }
+            transition(BreakerState.HALF_OPEN);
+        }
+        if (state == BreakerState.HALF_OPEN) {
+            if (probesStarted >= settings.halfOpenProbes()) {
+                return REFUSED;
+            }
+            probesStarted++;
+        }
+        return generation;
+    }
+
+    synchronized void onSuccess(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == BreakerState.HALF_OPEN) {
+            if (++probesSucceeded >= settings.halfOpenProbes()) {
+                transition(BreakerState.CLOSED);
+            }
+        } else if (state == BreakerState.CLOSED) {
+            record(false);
+        }
+    }
+
+    synchronized void onFailure(long permit) {
+        if (permit != generation) {
+            return;
+        }
+        if (state == BreakerState.HALF_OPEN) {
+            transition(BreakerState.OPEN);
+        } else if (state == BreakerState.CLOSED) {
+            record(true);
+            if (recorded >= settings.minimumCalls() && failures >= settings.failureRateThreshold() * recorded) {
+                transition(BreakerState.OPEN);
+            }
+        }
+    }
+
+    BreakerState state() {
+        return state;
+    }
+
+    long transitionsTo(BreakerState target) {
+        return transitions.get(target).sum();
+    }
+
+    private void record(boolean failure) {
+        if (recorded == failed.length) {
+            if (failed[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        failed[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % failed.length;
+    }
+
+    private void transition(BreakerState target) {
+        switch (target) {
+            case OPEN -> {
+                openedAt = System.nanoTime();
+                log.warn("Stats lookups failing, circuit breaker open for {}", settings.openDuration());
+            }
+            case HALF_OPEN -> {
+                probesStarted = 0;
+                probesSucceeded = 0;
+            }
+            case CLOSED -> {
+                next = 0;
+                recorded = 0;
+                failures = 0;
+                log.info("Stats lookups recovered, circuit breaker closed");
+            }
+        }
+        state = target;
+        generation++;
+        transitions.get(target).increment();
+    }
+}
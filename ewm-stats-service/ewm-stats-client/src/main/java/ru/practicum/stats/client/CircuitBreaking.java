@@ -0,0 +1,21 @@
+package ru.practicum.stats.client;
+
+import java.time.Duration;
+
+/**
+ * Settings of the circuit breaker around stats lookups.
+ *
+ * @param windowSize           most recent calls the failure rate is computed over
+ * @param minimumCalls         calls needed in the window before the breaker may open
+ * @param failureRateThreshold failure rate, from 0 to 1, at which the breaker opens
+ * @param openDuration         how long the breaker stays open before letting probes through
+ * @param halfOpenProbes       probe calls that must all succeed to close the breaker again
+ * @param fallbackSize         last known results kept for answering while the breaker is open
+ */
+public record CircuitBreaking(int windowSize, int minimumCalls, double failureRateThreshold, Duration openDuration,
+                              int halfOpenProbes, long fallbackSize) {
+
+    public static CircuitBreaking defaults() {
+        return new CircuitBreaking(50, 10, 0.5, Duration.ofSeconds(10), 3, 10_000);
+    }
+}
@@ -0,0 +1,20 @@
+package ru.practicum.stats.client;
+
+import java.time.Duration;
+
+/**
+ * Settings of the asynchronous hit sender.
+ *
+ * @param capacity      hits held in memory at most; further hits are dropped until the queue drains
+ * @param batchSize     hits sent in one {@code /hits/batch} request at most
+ * @param flushInterval how long a partial batch may wait before it is sent
+ * @param maxAttempts   attempts per batch before its hits are dropped
+ * @param retryBackoff  base delay between attempts, doubled after each failure and jittered
+ */
+public record HitBatching(int capacity, int batchSize, Duration flushInterval, int maxAttempts,
+                          Duration retryBackoff) {
+
+    public static HitBatching defaults() {
+        return new HitBatching(10_000, 500, Duration.ofMillis(200), 5, Duration.ofMillis(100));
+    }
+}
@@ -0,0 +1,17 @@
+package ru.practicum.stats.client;
+
+import java.time.Duration;
+
+/**
+ * Settings of the client-side {@code /stats} result cache.
+ *
+ * @param maxSize      results kept at most
+ * @param refreshAfter age after which a read still gets the cached result but triggers a background reload
+ * @param expireAfter  age after which a result is no longer served at all, e.g. while the server is down
+ */
+public record StatsCaching(long maxSize, Duration refreshAfter, Duration expireAfter) {
+
+    public static StatsCaching defaults() {
+        return new StatsCaching(10_000, Duration.ofSeconds(5), Duration.ofMinutes(1));
+    }
+}
@@ -1,44 +1,266 @@
 package ru.practicum.stats.client;
 
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 import org.springframework.web.util.UriComponentsBuilder;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.SeriesInterval;
+import ru.practicum.stats.dto.SeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
 
 import java.time.LocalDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.Function;
 
-public class StatsClient {
+/**
+ * Client of the stats server. Hits are posted synchronously unless {@link HitBatching} is given, in which case
+ * {@link #hit} only queues them for a background sender; {@link #close} then delivers what is still queued.
+ * With {@link StatsCaching}, {@link #getStats} and {@link #getViews} are answered from a local cache that is
+ * refreshed in the background. With {@link CircuitBreaking}, lookups stop calling a failing server for a while
+ * and return the last result known for the same query instead.
+ */
+public class StatsClient implements AutoCloseable {
 
     private static final DateTimeFormatter DATE_TIME_FORMATTER =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
 
+    private static final String EVENT_URI_PREFIX = "/events/";
+
+    private static final ObjectReader STATS_READER = new ObjectMapper().readerFor(ViewStatsDto.class);
+
     private final RestTemplate restTemplate;
     private final String serverUrl;
+    private final WireFormat wireFormat;
+    private final AsyncHitSender hitSender;
+    private final StatsResultCache statsCache;
+    private final CircuitBreaker breaker;
+    private final Cache<StatsKey, List<ViewStatsDto>> lastKnown;
 
     public StatsClient(String serverUrl) {
-        this.serverUrl = serverUrl;
-        this.restTemplate = new RestTemplate();
+        this(StatsClientSettings.of(serverUrl));
+    }
+
+    public StatsClient(StatsClientSettings settings) {
+        HitBatching batching = settings.getHitBatching();
+        StatsCaching caching = settings.getCaching();
+        CircuitBreaking breaking = settings.getBreaking();
+        this.serverUrl = settings.getServerUrl();
+        this.wireFormat = settings.getWireFormat();
+        this.restTemplate = new RestTemplate(settings.getTransport().requestFactory());
+        this.hitSender = batching == null ? null : new AsyncHitSender(this::hits, batching);
+        this.statsCache = caching == null ? null : new StatsResultCache(caching, this::fetchStats);
+        this.breaker = breaking == null ? null : new CircuitBreaker(breaking);
+        this.lastKnown = breaking == null ? null : Caffeine.newBuilder().maximumSize(breaking.fallbackSize()).build();
     }
 
+    /**
+     * Records a hit. In batching mode this never blocks or throws: the hit is queued, or dropped and counted
+     * when the queue is full.
+     */
     public void hit(HitDto hitDto) {
-        restTemplate.postForEntity(serverUrl + "/hit", hitDto, Void.class);
+        if (hitSender != null) {
+            hitSender.offer(hitDto);
+            return;
+        }
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(wireFormat.mediaType());
+        restTemplate.postForEntity(serverUrl + "/hit", new HttpEntity<>(hitDto, headers), Void.class);
+    }
+
+    /**
+     * Posts the hits in a single {@code /hits/batch} request.
+     */
+    public void hits(List<HitDto> hitDtos) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(wireFormat.mediaType());
+        restTemplate.postForEntity(serverUrl + "/hits/batch", new HttpEntity<>(hitDtos, headers), Void.class);
+    }
+
+    /**
+     * Hits delivered by the background sender; always 0 without batching.
+     */
+    public long hitsSent() {
+        return hitSender == null ? 0 : hitSender.sent();
+    }
+
+    /**
+     * Hits given up on because the queue was full or every attempt to send them failed.
+     */
+    public long hitsDropped() {
+        return hitSender == null ? 0 : hitSender.dropped();
+    }
+
+    public int hitQueueDepth() {
+        return hitSender == null ? 0 : hitSender.queueDepth();
+    }
+
+    /**
+     * State of the lookup circuit breaker; always {@link BreakerState#CLOSED} without one.
+     */
+    public BreakerState breakerState() {
+        return breaker == null ? BreakerState.CLOSED : breaker.state();
     }
 
+    /**
+     * How many times the lookup circuit breaker has moved into {@code state}.
+     */
+    public long breakerTransitions(BreakerState state) {
+        return breaker == null ? 0 : breaker.transitionsTo(state);
+    }
+
+    @Override
+    public void close() {
+        if (hitSender != null) {
+            hitSender.close();
+        }
+        if (statsCache != null) {
+            statsCache.close();
+        }
+    }
+
+    /**
+     * With caching on, the result may be up to {@link StatsCaching#expireAfter()} old, and an end in the
+     * future is treated as now.
+     */
     public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end,
                                        List<String> uris, boolean unique) {
-        String urisParam = (uris == null || uris.isEmpty()) ? "" : String.join(",", uris);
+        if (statsCache != null) {
+            return statsCache.get(start, end, uris, unique);
+        }
+        return fetchStats(start, end, uris, unique);
+    }
+
+    /**
+     * Asks the server through the circuit breaker. Server errors, unreachable servers and anything else thrown
+     * count as failures; while the breaker is open, or when a call fails, the last result for the query is
+     * returned if known.
+     */
+    private List<ViewStatsDto> fetchStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                          boolean unique) {
+        if (breaker == null) {
+            return requestStats(start, end, uris, unique);
+        }
+        StatsKey key = StatsKey.of(start, end, uris, unique);
+        long permit = breaker.tryAcquire();
+        if (permit == CircuitBreaker.REFUSED) {
+            return lastKnown(key, null);
+        }
+        List<ViewStatsDto> stats;
+        try {
+            stats = requestStats(start, end, uris, unique);
+        } catch (HttpClientErrorException e) {
+            breaker.onSuccess(permit);
+            throw e;
+        } catch (RestClientException e) {
+            breaker.onFailure(permit);
+            return lastKnown(key, e);
+        } catch (RuntimeException | Error e) {
+            breaker.onFailure(permit);
+            throw e;
+        }
+        breaker.onSuccess(permit);
+        lastKnown.put(key, stats);
+        return stats;
+    }
 
-        String url = UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats")
+    private List<ViewStatsDto> lastKnown(StatsKey key, RestClientException cause) {
+        List<ViewStatsDto> stats = lastKnown.getIfPresent(key);
+        if (stats == null) {
+            throw new StatsUnavailableException(cause == null ? "Stats circuit breaker is open"
+                    : "Stats server unavailable: " + cause.getMessage(), cause);
+        }
+        return stats;
+    }
+
+    private List<ViewStatsDto> requestStats(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                            boolean unique) {
+        ViewStatsDto[] response = get(statsUrl(start, end, uris, unique), ViewStatsDto[].class);
+
+        return response == null ? Collections.emptyList() : Arrays.asList(response);
+    }
+
+    /**
+     * Views of each event, from the {@code /events/{id}} hits, in a single request. Events without hits map to 0.
+     */
+    public Map<Long, Long> getViews(Collection<Long> eventIds, LocalDateTime start, LocalDateTime end,
+                                    boolean unique) {
+        Map<Long, Long> views = new HashMap<>();
+        if (eventIds.isEmpty()) {
+            return views;
+        }
+        List<String> uris = new ArrayList<>(eventIds.size());
+        for (Long eventId : eventIds) {
+            views.put(eventId, 0L);
+            uris.add(EVENT_URI_PREFIX + eventId);
+        }
+        for (ViewStatsDto stats : getStats(start, end, uris, unique)) {
+            String uri = stats.getUri();
+            if (uri.startsWith(EVENT_URI_PREFIX)) {
+                views.computeIfPresent(Long.valueOf(uri.substring(EVENT_URI_PREFIX.length())),
+                        (id, hits) -> Math.max(hits, stats.getHits()));
+            }
+        }
+        return views;
+    }
+
+    /**
+     * Reads the stats as a newline-delimited JSON stream, so wide results are never held in memory at once.
+     * The iterator is only valid inside {@code reader}; the connection is closed when it returns.
+     */
+    public <T> T streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                             Function<Iterator<ViewStatsDto>, T> reader) {
+        return restTemplate.execute(statsUrl(start, end, uris, unique), HttpMethod.GET,
+                request -> request.getHeaders().setAccept(List.of(MediaType.APPLICATION_NDJSON)),
+                response -> {
+                    try (MappingIterator<ViewStatsDto> rows = STATS_READER.readValues(response.getBody())) {
+                        return reader.apply(rows);
+                    }
+                });
+    }
+
+    /**
+     * Hits per {@code interval} bucket for each series, computed by the server in a single query.
+     */
+    public List<SeriesPointDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                          SeriesInterval interval, boolean unique) {
+        String url = UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats/series")
                 .queryParam("start", start.format(DATE_TIME_FORMATTER))
                 .queryParam("end", end.format(DATE_TIME_FORMATTER))
-                .queryParam("uris", urisParam)
+                .queryParam("uris", (uris == null || uris.isEmpty()) ? "" : String.join(",", uris))
+                .queryParam("interval", interval)
                 .queryParam("unique", unique)
                 .toUriString();
 
-        ViewStatsDto[] response = restTemplate.getForObject(url, ViewStatsDto[].class);
+        SeriesPointDto[] response = get(url, SeriesPointDto[].class);
 
         return response == null ? Collections.emptyList() : Arrays.asList(response);
     }
-}
\ No newline at end of file
+
+    private <T> T get(String url, Class<T> type) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setAccept(List.of(wireFormat.mediaType()));
+        return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), type).getBody();
+    }
+
+    private String statsUrl(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        String urisParam = (uris == null || uris.isEmpty()) ? "" : String.join(",", uris);
+
+        return UriComponentsBuilder.fromHttpUrl(serverUrl + "/stats")
+                .queryParam("start", start.format(DATE_TIME_FORMATTER))
+                .queryParam("end", end.format(DATE_TIME_FORMATTER))
+                .queryParam("uris", urisParam)
+                .queryParam("unique", unique)
+                .toUriString();
+    }
+}
@@ -0,0 +1,31 @@
+package ru.practicum.stats.client;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Everything {@link StatsClient} can be configured with. Only {@code serverUrl} is required; a feature whose
+ * settings are left null is off.
+ */
+@Value
+@Builder
+public class StatsClientSettings {
+    @NonNull
+    String serverUrl;
+    @Builder.Default
+    WireFormat wireFormat = WireFormat.JSON;
+    @Builder.Default
+    StatsTransport transport = StatsTransport.defaults();
+    /** Queue hits and send them in batches from a background thread. */
+    HitBatching hitBatching;
+    /** Serve lookups from a stale-while-revalidate cache. */
+    StatsCaching caching;
+    /** Guard lookups with a circuit breaker that falls back to the last known results. */
+    CircuitBreaking breaking;
+
+    /** Plain synchronous client with default transport and no optional features. */
+    public static StatsClientSettings of(String serverUrl) {
+        return builder().serverUrl(serverUrl).build();
+    }
+}
@@ -0,0 +1,26 @@
+package ru.practicum.stats.client;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Identity of a {@code /stats} query for the client-side caches: sorted distinct uris, the unique flag and the
+ * window. {@code end} is null for an open window, one that has not ended yet.
+ */
+record StatsKey(List<String> uris, boolean unique, LocalDateTime start, LocalDateTime end) {
+
+    static StatsKey of(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return new StatsKey(
+                uris == null ? List.of() : uris.stream().distinct().sorted().toList(),
+                unique,
+                start,
+                end.isAfter(LocalDateTime.now()) ? null : end);
+    }
+
+    /**
+     * End to query with: now for an open window.
+     */
+    LocalDateTime queryEnd() {
+        return end == null ? LocalDateTime.now().plusSeconds(1) : end;
+    }
+}
@@ -0,0 +1,62 @@
+package ru.practicum.stats.client;
+
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stale-while-revalidate cache of {@code /stats} results. A result older than
+ * {@link StatsCaching#refreshAfter()} is still returned, and a reload runs in the background; a failed reload
+ * keeps the old result until it expires.
+ * <p>
+ * Keys are {@link StatsKey}s: every open window with the same start shares one entry and is loaded up to the
+ * current time, so callers asking "views so far" hit the same entry on every request.
+ * <p>
+ * Reloads run on a small pool of their own, so a slow server ties up neither {@code ForkJoinPool.commonPool()}
+ * nor an unbounded number of threads. When the pool is saturated a reload is rejected and the stale result
+ * stays until the next read after the pool has caught up.
+ */
+class StatsResultCache {
+
+    private static final int REFRESH_THREADS = 2;
+    private static final int REFRESH_QUEUE = 1_000;
+
+    private final ThreadPoolExecutor refreshExecutor;
+    private final LoadingCache<StatsKey, List<ViewStatsDto>> cache;
+
+    StatsResultCache(StatsCaching settings, Loader loader) {
+        AtomicInteger threads = new AtomicInteger();
+        this.refreshExecutor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS, 0, TimeUnit.MILLISECONDS,
+                new ArrayBlockingQueue<>(REFRESH_QUEUE), task -> {
+                    Thread thread = new Thread(task, "stats-cache-refresh-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        this.cache = Caffeine.newBuilder()
+                .executor(refreshExecutor)
+                .maximumSize(settings.maxSize())
+                .refreshAfterWrite(settings.refreshAfter())
+                .expireAfterWrite(settings.expireAfter())
+                .build(key -> List.copyOf(loader.load(key.start(), key.queryEnd(), key.uris(), key.unique())));
+    }
+
+    List<ViewStatsDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
+        return cache.get(StatsKey.of(start, end, uris, unique));
+    }
+
+    void close() {
+        refreshExecutor.shutdownNow();
+    }
+
+    @FunctionalInterface
+    interface Loader {
+        List<ViewStatsDto> load(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
+    }
+}
@@ -0,0 +1,33 @@
+package ru.practicum.stats.client;
+
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+
+/**
+ * HTTP settings of {@link StatsClient}. Requests go through one shared JDK {@link HttpClient}, which keeps
+ * connections alive and reuses them, and with {@code http2} multiplexes concurrent calls over a single
+ * connection when the server agrees to upgrade (falling back to HTTP/1.1 otherwise).
+ *
+ * @param connectTimeout time allowed to open a connection
+ * @param readTimeout    deadline of each call for the response to arrive; streamed bodies are read without one
+ * @param http2          whether to offer HTTP/2
+ */
+public record StatsTransport(Duration connectTimeout, Duration readTimeout, boolean http2) {
+
+    public static StatsTransport defaults() {
+        return new StatsTransport(Duration.ofSeconds(2), Duration.ofSeconds(5), true);
+    }
+
+    ClientHttpRequestFactory requestFactory() {
+        HttpClient httpClient = HttpClient.newBuilder()
+                .version(http2 ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(connectTimeout)
+                .build();
+        JdkClientHttpRequestFactory factory = new JdkClientHttpRequestFactory(httpClient);
+        factory.setReadTimeout(readTimeout);
+        return factory;
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.stats.client;
+
+/**
+ * Thrown by stats lookups when the server cannot be asked and no earlier result is known.
+ */
+public class StatsUnavailableException extends RuntimeException {
+
+    public StatsUnavailableException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,22 @@
+package ru.practicum.stats.client;
+
+import org.springframework.http.MediaType;
+
+/**
+ * Encoding used by {@link StatsClient} for request and response bodies.
+ */
+public enum WireFormat {
+    JSON(MediaType.APPLICATION_JSON),
+    /** Binary JSON; smaller and cheaper to encode and parse, understood by the stats server. */
+    SMILE(new MediaType("application", "x-jackson-smile"));
+
+    private final MediaType mediaType;
+
+    WireFormat(MediaType mediaType) {
+        this.mediaType = mediaType;
+    }
+
+    public MediaType mediaType() {
+        return mediaType;
+    }
+}
@@ -0,0 +1,129 @@
+package ru.practicum.stats.client;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.http.converter.json.Jackson2ObjectMapperBuilder;
+import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Encode and decode cost of the two {@link WireFormat}s on the stats traffic: a batch of hits as the
+ * background sender posts it, and a {@code /stats} result for a page of events. The mappers are built the
+ * way RestTemplate's JSON and Smile converters build theirs. Run by hand:
+ * <pre>
+ * mvn -pl ewm-stats-service/ewm-stats-client -am install -DskipTests
+ * mvn -pl ewm-stats-service/ewm-stats-client test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=ru.practicum.stats.client.WireFormatBenchmark
+ * </pre>
+ * Payload sizes are printed before the runs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class WireFormatBenchmark {
+
+    private static final int HITS = 500;
+    private static final int STATS = 1_000;
+    private static final TypeReference<List<HitDto>> HIT_LIST = new TypeReference<>() {
+    };
+    private static final TypeReference<List<ViewStatsDto>> STATS_LIST = new TypeReference<>() {
+    };
+
+    @Param({"JSON", "SMILE"})
+    public WireFormat format;
+
+    private ObjectMapper mapper;
+    private List<HitDto> hits;
+    private List<ViewStatsDto> stats;
+    private byte[] encodedHits;
+    private byte[] encodedStats;
+
+    @Setup
+    public void setUp() throws IOException {
+        mapper = mapper(format);
+        hits = hits();
+        stats = stats();
+        encodedHits = mapper.writeValueAsBytes(hits);
+        encodedStats = mapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public byte[] encodeHits() throws IOException {
+        return mapper.writeValueAsBytes(hits);
+    }
+
+    @Benchmark
+    public List<HitDto> decodeHits() throws IOException {
+        return mapper.readValue(encodedHits, HIT_LIST);
+    }
+
+    @Benchmark
+    public byte[] encodeStats() throws IOException {
+        return mapper.writeValueAsBytes(stats);
+    }
+
+    @Benchmark
+    public List<ViewStatsDto> decodeStats() throws IOException {
+        return mapper.readValue(encodedStats, STATS_LIST);
+    }
+
+    public static void main(String[] args) throws Exception {
+        for (WireFormat format : WireFormat.values()) {
+            ObjectMapper mapper = mapper(format);
+            System.out.printf("%-5s %d hits: %,d bytes, %d stats: %,d bytes%n", format,
+                    HITS, mapper.writeValueAsBytes(hits()).length, STATS, mapper.writeValueAsBytes(stats()).length);
+        }
+        new Runner(new OptionsBuilder().include(WireFormatBenchmark.class.getSimpleName()).build()).run();
+    }
+
+    private static ObjectMapper mapper(WireFormat format) {
+        return switch (format) {
+            case JSON -> Jackson2ObjectMapperBuilder.json().build();
+            case SMILE -> Jackson2ObjectMapperBuilder.smile().build();
+        };
+    }
+
+    private static List<HitDto> hits() {
+        List<HitDto> hits = new ArrayList<>(HITS);
+        LocalDateTime now = LocalDateTime.of(2024, 1, 1, 12, 0);
+        for (int i = 0; i < HITS; i++) {
+            HitDto hit = new HitDto();
+            hit.setApp("ewm-main-service");
+            hit.setUri("/events/" + (i % 50));
+            hit.setIp("192.168." + (i >>> 8) + "." + (i & 255));
+            hit.setTimestamp(now.plusSeconds(i));
+            hits.add(hit);
+        }
+        return hits;
+    }
+
+    private static List<ViewStatsDto> stats() {
+        List<ViewStatsDto> stats = new ArrayList<>(STATS);
+        for (int i = 0; i < STATS; i++) {
+            stats.add(new ViewStatsDto("ewm-main-service", "/events/" + i, (long) (STATS - i) * 37));
+        }
+        return stats;
+    }
+}
@@ -3,6 +3,7 @@ package ru.practicum.stats.dto;
 import com.fasterxml.jackson.annotation.JsonFormat;
 import jakarta.validation.constraints.NotBlank;
 import jakarta.validation.constraints.NotNull;
+import jakarta.validation.constraints.Size;
 import lombok.Data;
 
 import java.time.LocalDateTime;
@@ -11,12 +12,15 @@ import java.time.LocalDateTime;
 public class HitDto {
 
     @NotBlank(message = "App name cannot be blank")
+    @Size(max = 255, message = "App name cannot be longer than 255 characters")
     private String app;
 
     @NotBlank(message = "URI cannot be blank")
+    @Size(max = 512, message = "URI cannot be longer than 512 characters")
     private String uri;
 
     @NotBlank(message = "IP address cannot be blank")
+    @IpAddress
     private String ip;
 
     @NotNull(message = "Timestamp cannot be null")
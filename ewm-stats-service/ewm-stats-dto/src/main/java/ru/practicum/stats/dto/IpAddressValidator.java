@@ -0,0 +1,35 @@
+package ru.practicum.stats.dto;
+
+import jakarta.validation.ConstraintValidator;
+import jakarta.validation.ConstraintValidatorContext;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.regex.Pattern;
+
+public class IpAddressValidator implements ConstraintValidator<IpAddress, String> {
+
+    private static final Pattern IPV4 = Pattern.compile(
+            "((25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)\\.){3}(25[0-5]|2[0-4]\\d|1\\d\\d|[1-9]?\\d)");
+    private static final Pattern IPV6_CHARS = Pattern.compile("[0-9a-fA-F:.]+");
+
+    @Override
+    public boolean isValid(String value, ConstraintValidatorContext context) {
+        if (value == null || value.isBlank()) {
+            return true;
+        }
+        if (value.indexOf(':') < 0) {
+            return IPV4.matcher(value).matches();
+        }
+        if (!IPV6_CHARS.matcher(value).matches()) {
+            return false;
+        }
+        try {
+            // a string containing ':' is parsed as an IPv6 literal and never resolved through DNS
+            InetAddress.getByName(value);
+            return true;
+        } catch (UnknownHostException e) {
+            return false;
+        }
+    }
+}
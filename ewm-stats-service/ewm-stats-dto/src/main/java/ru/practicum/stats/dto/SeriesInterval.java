@@ -0,0 +1,10 @@
+package ru.practicum.stats.dto;
+
+/**
+ * Bucket width of a {@code /stats/series} histogram.
+ */
+public enum SeriesInterval {
+    MINUTE,
+    HOUR,
+    DAY
+}
@@ -1,23 +1,48 @@
 package ru.practicum.stats.server.controller;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
 import jakarta.validation.Valid;
+import jakarta.validation.constraints.NotEmpty;
+import jakarta.validation.constraints.Positive;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.format.annotation.DateTimeFormat;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.SeriesInterval;
+import ru.practicum.stats.dto.SeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.RollupGranularity;
 import ru.practicum.stats.server.service.StatsService;
+import ru.practicum.stats.server.service.plan.PlannedStats;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.Map;
 
 @RestController
 @RequiredArgsConstructor
 public class StatsController {
 
+    static final String PLAN_HEADER = "X-Stats-Plan";
+
     private final StatsService statsService;
+    private final ObjectMapper objectMapper;
+
+    @Value("${stats.series.max-buckets:10000}")
+    private long maxSeriesBuckets;
+
+    @Value("${stats.planner.plan-header:true}")
+    private boolean planHeader;
 
     @PostMapping("/hit")
     @ResponseStatus(HttpStatus.CREATED)
@@ -25,16 +50,96 @@ public class StatsController {
         statsService.saveHit(dto);
     }
 
+    @PostMapping("/hits/batch")
+    @ResponseStatus(HttpStatus.CREATED)
+    public void hits(@RequestBody @NotEmpty List<@Valid HitDto> dtos) {
+        statsService.saveHits(dtos);
+    }
+
+    /**
+     * Bulk import of newline-delimited {@link HitDto} JSON, for backfills and access-log replays.
+     */
+    @PostMapping(value = "/admin/hits/import", consumes = MediaType.APPLICATION_NDJSON_VALUE)
+    @ResponseStatus(HttpStatus.CREATED)
+    public Map<String, Long> importHits(InputStream body) throws IOException {
+        return Map.of("imported", statsService.importHits(body));
+    }
+
+    /**
+     * With {@code stats.planner.plan-header} on, the chosen query plan is returned in {@value #PLAN_HEADER}.
+     */
     @GetMapping("/stats")
-    public List<ViewStatsDto> getStats(
+    public ResponseEntity<List<ViewStatsDto>> getStats(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") boolean unique,
+            @RequestParam(defaultValue = "false") boolean approximate
+    ) {
+        validateRange(start, end);
+        PlannedStats result = statsService.getStats(start, end, uris, unique, approximate);
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (planHeader) {
+            response.header(PLAN_HEADER, result.plan());
+        }
+        return response.body(result.stats());
+    }
+
+    /**
+     * Newline-delimited JSON, one {@link ViewStatsDto} per line, written while rows are read from the database.
+     */
+    @GetMapping(value = "/stats", produces = MediaType.APPLICATION_NDJSON_VALUE)
+    public StreamingResponseBody streamStats(
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
             @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
             @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "false") boolean unique,
+            @RequestParam(defaultValue = "false") boolean approximate
+    ) {
+        validateRange(start, end);
+        ObjectWriter writer = objectMapper.writerFor(ViewStatsDto.class);
+        return out -> statsService.streamStats(start, end, uris, unique, approximate, dto -> {
+            try {
+                out.write(writer.writeValueAsBytes(dto));
+                out.write('\n');
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    @GetMapping("/stats/top")
+    public List<ViewStatsDto> getTop(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(defaultValue = "10") @Positive int limit
+    ) {
+        validateRange(start, end);
+        return statsService.getTop(start, end, limit);
+    }
+
+    /**
+     * Hits per fixed-width bucket and series, for drawing a chart in one request.
+     */
+    @GetMapping("/stats/series")
+    public List<SeriesPointDto> getSeries(
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime start,
+            @RequestParam @DateTimeFormat(pattern = "yyyy-MM-dd HH:mm:ss") LocalDateTime end,
+            @RequestParam(required = false) List<String> uris,
+            @RequestParam(defaultValue = "HOUR") SeriesInterval interval,
             @RequestParam(defaultValue = "false") boolean unique
     ) {
+        validateRange(start, end);
+        if (RollupGranularity.of(interval).bucketsBetween(start, end) > maxSeriesBuckets) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "at most " + maxSeriesBuckets + " buckets per series, use a wider interval");
+        }
+        return statsService.getSeries(start, end, uris, interval, unique);
+    }
+
+    private void validateRange(LocalDateTime start, LocalDateTime end) {
         if (end.isBefore(start)) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "end must be after start");
         }
-        return statsService.getStats(start, end, uris, unique);
     }
 }
\ No newline at end of file
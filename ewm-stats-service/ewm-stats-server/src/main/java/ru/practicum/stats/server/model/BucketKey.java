@@ -0,0 +1,23 @@
+package ru.practicum.stats.server.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * Identifies one (app, uri) series in one time bucket. Ordered by bucket first, matching the primary key
+ * of the per-bucket tables, so batches written in this order lock rows in a stable order.
+ */
+public record BucketKey(int appId, int uriId, LocalDateTime bucket) implements Comparable<BucketKey> {
+
+    public static BucketKey of(EndpointHit hit, RollupGranularity granularity) {
+        return new BucketKey(hit.getAppId(), hit.getUriId(), granularity.floor(hit.getTimestamp()));
+    }
+
+    @Override
+    public int compareTo(BucketKey other) {
+        int cmp = bucket.compareTo(other.bucket);
+        if (cmp == 0) {
+            cmp = Integer.compare(appId, other.appId);
+        }
+        return cmp != 0 ? cmp : Integer.compare(uriId, other.uriId);
+    }
+}
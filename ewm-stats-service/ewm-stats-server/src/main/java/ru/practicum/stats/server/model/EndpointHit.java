@@ -1,31 +1,30 @@
 package ru.practicum.stats.server.model;
 
-import jakarta.persistence.*;
 import lombok.*;
 
 import java.time.LocalDateTime;
 
-@Entity
-@Table(name = "endpoint_hits")
+/**
+ * A hit on its way into storage. {@code appId}, {@code uriId} and {@code ipId} are filled in from the
+ * dictionary just before the hit is written.
+ */
 @Getter
 @Setter
 @NoArgsConstructor
 @AllArgsConstructor
 @Builder
 public class EndpointHit {
-    @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
-    private Long id;
-
-    @Column(nullable = false)
     private String app;
 
-    @Column(nullable = false)
     private String uri;
 
-    @Column(nullable = false)
     private String ip;
 
-    @Column(nullable = false)
     private LocalDateTime timestamp;
-}
\ No newline at end of file
+
+    private Integer appId;
+
+    private Integer uriId;
+
+    private Integer ipId;
+}
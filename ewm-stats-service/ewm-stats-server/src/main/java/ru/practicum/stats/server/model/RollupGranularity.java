@@ -0,0 +1,49 @@
+package ru.practicum.stats.server.model;
+
+import ru.practicum.stats.dto.SeriesInterval;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.Locale;
+
+public enum RollupGranularity {
+    MINUTE("hit_rollup_minute", ChronoUnit.MINUTES),
+    HOUR("hit_rollup_hour", ChronoUnit.HOURS),
+    DAY("hit_rollup_day", ChronoUnit.DAYS);
+
+    private final String table;
+    private final ChronoUnit unit;
+
+    RollupGranularity(String table, ChronoUnit unit) {
+        this.table = table;
+        this.unit = unit;
+    }
+
+    public String table() {
+        return table;
+    }
+
+    public String sqlUnit() {
+        return name().toLowerCase(Locale.ROOT);
+    }
+
+    public LocalDateTime floor(LocalDateTime time) {
+        return time.truncatedTo(unit);
+    }
+
+    public LocalDateTime ceil(LocalDateTime time) {
+        LocalDateTime floor = floor(time);
+        return floor.equals(time) ? floor : floor.plus(1, unit);
+    }
+
+    /**
+     * Number of buckets of this width that {@code [start, end]} touches.
+     */
+    public long bucketsBetween(LocalDateTime start, LocalDateTime end) {
+        return unit.between(floor(start), floor(end)) + 1;
+    }
+
+    public static RollupGranularity of(SeriesInterval interval) {
+        return valueOf(interval.name());
+    }
+}
@@ -0,0 +1,7 @@
+package ru.practicum.stats.server.model;
+
+/**
+ * One row of a stats response before it is turned into a {@code ViewStatsDto}.
+ */
+public record SeriesKey(String app, String uri) {
+}
@@ -0,0 +1,36 @@
+package ru.practicum.stats.server.repository;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import javax.sql.DataSource;
+import java.util.function.Consumer;
+
+/**
+ * Read queries run through a forward-only cursor. Inside a transaction the PostgreSQL driver then fetches
+ * {@code stats.stream.fetch-size} rows at a time instead of materialising the whole result.
+ */
+@Component
+class CursorQueries {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    CursorQueries(DataSource dataSource, @Value("${stats.stream.fetch-size:1000}") int fetchSize) {
+        JdbcTemplate template = new JdbcTemplate(dataSource);
+        template.setFetchSize(fetchSize);
+        this.jdbcTemplate = new NamedParameterJdbcTemplate(template);
+    }
+
+    /**
+     * Passes every {@code app, uri, <hitsColumn>} row to {@code sink} as it is read.
+     */
+    void forEachStat(String sql, SqlParameterSource params, String hitsColumn, Consumer<ViewStatsDto> sink) {
+        jdbcTemplate.query(sql, params, rs -> {
+            sink.accept(new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong(hitsColumn)));
+        });
+    }
+}
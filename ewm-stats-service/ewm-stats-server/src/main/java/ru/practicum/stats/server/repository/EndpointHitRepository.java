@@ -1,39 +1,186 @@
 package ru.practicum.stats.server.repository;
 
-import org.springframework.data.jpa.repository.Query;
-import org.springframework.data.repository.CrudRepository;
-import org.springframework.data.repository.query.Param;
-import ru.practicum.stats.server.model.EndpointHit;
+import lombok.RequiredArgsConstructor;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.SeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
 
+import java.nio.charset.StandardCharsets;
+import java.sql.Timestamp;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Raw hits in {@code endpoint_hits}. Rows hold dictionary ids; names are joined back only onto result rows.
+ */
+@Repository
+@RequiredArgsConstructor
+public class EndpointHitRepository {
+
+    /*
+     * Sent as a JDBC batch, which the PostgreSQL driver folds into multi-row INSERTs
+     * when reWriteBatchedInserts is on.
+     */
+    private static final String INSERT_SQL =
+            "INSERT INTO endpoint_hits (app_id, uri_id, ip, timestamp) VALUES (?, ?, ?::inet, ?)";
+
+    /*
+     * Every value is a number, a validated IP address or a timestamp, so rows never need CSV quoting.
+     */
+    private static final String COPY_SQL =
+            "COPY endpoint_hits (app_id, uri_id, ip, timestamp) FROM STDIN WITH (FORMAT csv)";
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorQueries cursorQueries;
+
+    @Value("${stats.ingest.jdbc-batch-size:500}")
+    private int batchSize;
+
+    public void insertAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.getJdbcTemplate().batchUpdate(INSERT_SQL, hits, batchSize, (ps, hit) -> {
+            ps.setInt(1, hit.getAppId());
+            ps.setInt(2, hit.getUriId());
+            ps.setString(3, hit.getIp());
+            ps.setTimestamp(4, Timestamp.valueOf(hit.getTimestamp()));
+        });
+    }
+
+    /**
+     * Streams the hits to the server with COPY on the current transaction's connection.
+     */
+    public void copyAll(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        jdbcTemplate.getJdbcTemplate().execute((ConnectionCallback<Long>) connection -> {
+            CopyIn copy = connection.unwrap(PGConnection.class).getCopyAPI().copyIn(COPY_SQL);
+            try {
+                StringBuilder row = new StringBuilder(128);
+                for (EndpointHit hit : hits) {
+                    row.setLength(0);
+                    row.append(hit.getAppId()).append(',')
+                            .append(hit.getUriId()).append(',')
+                            .append(hit.getIp()).append(',')
+                            .append(Timestamp.valueOf(hit.getTimestamp())).append('\n');
+                    byte[] bytes = row.toString().getBytes(StandardCharsets.UTF_8);
+                    copy.writeToCopy(bytes, 0, bytes.length);
+                }
+                return copy.endCopy();
+            } finally {
+                if (copy.isActive()) {
+                    copy.cancelCopy();
+                }
+            }
+        });
+    }
+
+    public List<ViewStatsDto> getStatsUnique(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return jdbcTemplate.query(statsUniqueSql(start, end, uris, params), params,
+                (rs, rowNum) -> new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    /**
+     * Cursor-backed variant of {@link #getStatsUnique}; must run inside a transaction.
+     */
+    public void streamStatsUnique(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                  Consumer<ViewStatsDto> sink) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        cursorQueries.forEachStat(statsUniqueSql(start, end, uris, params), params, "hits", sink);
+    }
+
+    private String statsUniqueSql(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                  MapSqlParameterSource params) {
+        params.addValue("start", start).addValue("end", end);
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE name IN (:uris))";
+        }
+        return "SELECT a.name AS app, u.name AS uri, s.hits FROM ("
+                + "SELECT app_id, uri_id, COUNT(DISTINCT ip) AS hits FROM (" + visitorsSql(uriFilter) + ") v"
+                + " GROUP BY app_id, uri_id) s"
+                + " JOIN hit_apps a ON a.id = s.app_id"
+                + " JOIN hit_uris u ON u.id = s.uri_id"
+                + " ORDER BY s.hits DESC";
+    }
+
+    /**
+     * Distinct visitors per (bucket, app, uri) at the given width, counted in one pass over the raw hits.
+     */
+    public List<SeriesPointDto> getSeriesUnique(RollupGranularity granularity, LocalDateTime start,
+                                                LocalDateTime end, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("start", start)
+                .addValue("end", end);
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE name IN (:uris))";
+        }
+        String sql = "SELECT a.name AS app, u.name AS uri, s.bucket, s.hits FROM ("
+                + "SELECT app_id, uri_id, date_trunc('" + granularity.sqlUnit() + "', timestamp) AS bucket,"
+                + " COUNT(DISTINCT ip) AS hits FROM (" + visitorsSql(uriFilter) + ") v"
+                + " GROUP BY 1, 2, 3) s"
+                + " JOIN hit_apps a ON a.id = s.app_id"
+                + " JOIN hit_uris u ON u.id = s.uri_id"
+                + " ORDER BY s.bucket, s.hits DESC";
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new SeriesPointDto(rs.getString("app"),
+                rs.getString("uri"), rs.getObject("bucket", LocalDateTime.class), rs.getLong("hits")));
+    }
+
+    /*
+     * Visits between :start and :end: raw hits, plus the per-hour distinct visitors of compacted hours
+     * that lie entirely inside the range, timestamped at the start of their hour. :end is inclusive to the
+     * second, so an hour ending one second after it still counts.
+     */
+    private static String visitorsSql(String uriFilter) {
+        return "SELECT app_id, uri_id, ip, timestamp FROM endpoint_hits"
+                + " WHERE timestamp BETWEEN :start AND :end" + uriFilter
+                + " UNION ALL SELECT app_id, uri_id, ip, bucket FROM hit_distinct_hour"
+                + " WHERE bucket >= :start"
+                + " AND bucket <= CAST(:end AS timestamp) - INTERVAL '59 minutes 59 seconds'" + uriFilter;
+    }
+
+    /**
+     * Streams {@code app, uri, timestamp, hits} for every hit at or after {@code since}.
+     */
+    public void forEachSince(LocalDateTime since, RowCallbackHandler handler) {
+        jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, s.timestamp, s.hits FROM ("
+                + "SELECT app_id, uri_id, timestamp, COUNT(*) AS hits FROM endpoint_hits"
+                + " WHERE timestamp >= :since GROUP BY app_id, uri_id, timestamp) s"
+                + " JOIN hit_apps a ON a.id = s.app_id"
+                + " JOIN hit_uris u ON u.id = s.uri_id", new MapSqlParameterSource("since", since), handler);
+    }
+
+    /**
+     * Earliest hit, raw or compacted. Compacted hits count from the start of their hour.
+     */
+    public LocalDateTime findEarliestTimestamp() {
+        return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT LEAST("
+                + "(SELECT MIN(timestamp) FROM endpoint_hits),"
+                + " (SELECT MIN(bucket) FROM hit_distinct_hour))", LocalDateTime.class);
+    }
 
-public interface EndpointHitRepository extends CrudRepository<EndpointHit, Long> {
-
-    @Query("""
-        SELECT new ru.practicum.stats.dto.ViewStatsDto(e.app, e.uri, COUNT(e.id))
-        FROM EndpointHit e
-        WHERE e.timestamp BETWEEN :start AND :end
-          AND (:urisNull = true OR e.uri IN :uris)
-        GROUP BY e.app, e.uri
-        ORDER BY COUNT(e.id) DESC
-        """)
-    List<ViewStatsDto> getStatsTotal(@Param("start") LocalDateTime start,
-                                     @Param("end") LocalDateTime end,
-                                     @Param("uris") List<String> uris,
-                                     @Param("urisNull") boolean urisNull);
-
-    @Query("""
-        SELECT new ru.practicum.stats.dto.ViewStatsDto(e.app, e.uri, COUNT(DISTINCT e.ip))
-        FROM EndpointHit e
-        WHERE e.timestamp BETWEEN :start AND :end
-          AND (:urisNull = true OR e.uri IN :uris)
-        GROUP BY e.app, e.uri
-        ORDER BY COUNT(DISTINCT e.ip) DESC
-        """)
-    List<ViewStatsDto> getStatsUnique(@Param("start") LocalDateTime start,
-                                      @Param("end") LocalDateTime end,
-                                      @Param("uris") List<String> uris,
-                                      @Param("urisNull") boolean urisNull);
-}
\ No newline at end of file
+    /**
+     * Latest hit, raw or compacted. Compacted hits count up to the end of their hour.
+     */
+    public LocalDateTime findLatestTimestamp() {
+        return jdbcTemplate.getJdbcTemplate().queryForObject("SELECT GREATEST("
+                + "(SELECT MAX(timestamp) FROM endpoint_hits),"
+                + " (SELECT MAX(bucket) + INTERVAL '1 hour' FROM hit_distinct_hour))", LocalDateTime.class);
+    }
+}
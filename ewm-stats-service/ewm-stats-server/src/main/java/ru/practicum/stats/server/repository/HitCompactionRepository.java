@@ -0,0 +1,48 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.time.LocalDateTime;
+
+/**
+ * Moves aged raw hits out of {@code endpoint_hits}. Totals are already in the rollup tables, so only the
+ * distinct visitors of each hour have to be kept, in {@code hit_distinct_hour}.
+ */
+@Repository
+@RequiredArgsConstructor
+public class HitCompactionRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public LocalDateTime findOldestBefore(LocalDateTime cutoff) {
+        return jdbcTemplate.queryForObject("SELECT MIN(timestamp) FROM endpoint_hits WHERE timestamp < :cutoff",
+                new MapSqlParameterSource("cutoff", cutoff), LocalDateTime.class);
+    }
+
+    /**
+     * Moves up to {@code limit} raw hits of the hour starting at {@code hour} into its distinct visitor set
+     * and returns how many were removed. Rows are deleted and saved by the same statement, so hits arriving
+     * for that hour in the meantime are either moved or left for the next chunk, never lost.
+     */
+    public int compactChunk(LocalDateTime hour, int limit) {
+        return jdbcTemplate.queryForObject("""
+                        WITH moved AS (
+                            DELETE FROM endpoint_hits WHERE (id, timestamp) IN (
+                                SELECT id, timestamp FROM endpoint_hits
+                                WHERE timestamp >= :from AND timestamp < :to
+                                LIMIT :limit)
+                            RETURNING app_id, uri_id, ip
+                        ), saved AS (
+                            INSERT INTO hit_distinct_hour (app_id, uri_id, bucket, ip)
+                            SELECT DISTINCT app_id, uri_id, CAST(:from AS timestamp), ip FROM moved
+                            ON CONFLICT DO NOTHING
+                        )
+                        SELECT COUNT(*) FROM moved""",
+                new MapSqlParameterSource("from", hour)
+                        .addValue("to", hour.plusHours(1))
+                        .addValue("limit", limit), Integer.class);
+    }
+}
@@ -0,0 +1,86 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+import java.sql.PreparedStatement;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class HitDictionaryRepository {
+
+    public static final String APPS = "hit_apps";
+    public static final String URIS = "hit_uris";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * Returns the ids of the given names in a dictionary table, adding the names that are not there yet.
+     * Existing names are looked up first and only the missing ones are inserted: an {@code INSERT} that hits
+     * the conflict still takes a value from the sequence, which would soon run out for the small id types.
+     */
+    public Map<String, Integer> resolve(String table, Collection<String> names) {
+        Map<String, Integer> ids = findIds(table, names);
+        if (ids.size() < names.size()) {
+            String[] missing = names.stream().filter(name -> !ids.containsKey(name)).sorted().toArray(String[]::new);
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement(
+                        "INSERT INTO " + table + " (name) SELECT unnest(?::varchar[]) ON CONFLICT (name) DO NOTHING");
+                ps.setArray(1, con.createArrayOf("varchar", missing));
+                return ps;
+            });
+            ids.putAll(findIds(table, Arrays.asList(missing)));
+        }
+        return ids;
+    }
+
+    private Map<String, Integer> findIds(String table, Collection<String> names) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT id, name FROM " + table + " WHERE name = ANY(?)");
+            ps.setArray(1, con.createArrayOf("varchar", names.toArray()));
+            return ps;
+        }, rs -> {
+            ids.put(rs.getString("name"), rs.getInt("id"));
+        });
+        return ids;
+    }
+
+    /**
+     * Returns the dense visitor ids of the given addresses, keyed by the addresses as passed in,
+     * adding the addresses that are not there yet. As in {@link #resolve}, only missing addresses are
+     * inserted, so known ones do not use up sequence values and the ids stay dense.
+     */
+    public Map<String, Integer> resolveIps(Collection<String> ips) {
+        Map<String, Integer> ids = findIpIds(ips);
+        if (ids.size() < ips.size()) {
+            String[] missing = ips.stream().filter(ip -> !ids.containsKey(ip)).sorted().toArray(String[]::new);
+            jdbcTemplate.update(con -> {
+                PreparedStatement ps = con.prepareStatement("INSERT INTO hit_visitor_ids (ip)"
+                        + " SELECT unnest(?::text[]::inet[]) ORDER BY 1 ON CONFLICT (ip) DO NOTHING");
+                ps.setArray(1, con.createArrayOf("text", missing));
+                return ps;
+            });
+            ids.putAll(findIpIds(Arrays.asList(missing)));
+        }
+        return ids;
+    }
+
+    private Map<String, Integer> findIpIds(Collection<String> ips) {
+        Map<String, Integer> ids = new HashMap<>();
+        jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT v.id, t.input FROM unnest(?::text[]) AS t(input)"
+                    + " JOIN hit_visitor_ids v ON v.ip = t.input::inet");
+            ps.setArray(1, con.createArrayOf("text", ips.toArray()));
+            return ps;
+        }, rs -> {
+            ids.put(rs.getString("input"), rs.getInt("id"));
+        });
+        return ids;
+    }
+}
@@ -0,0 +1,142 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.SeriesPointDto;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.BucketKey;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class HitRollupRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorQueries cursorQueries;
+
+    /**
+     * Adds pre-aggregated counts to a rollup table. Keys must be unique within one call.
+     */
+    public void increment(RollupGranularity granularity, Map<BucketKey, Long> counts) {
+        if (counts.isEmpty()) {
+            return;
+        }
+        String sql = "INSERT INTO " + granularity.table() + " (app_id, uri_id, bucket, hits) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (bucket, app_id, uri_id) DO UPDATE SET hits = " + granularity.table() + ".hits + EXCLUDED.hits";
+        List<Map.Entry<BucketKey, Long>> rows = List.copyOf(counts.entrySet());
+        jdbcTemplate.getJdbcTemplate().batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setInt(1, row.getKey().appId());
+            ps.setInt(2, row.getKey().uriId());
+            ps.setTimestamp(3, Timestamp.valueOf(row.getKey().bucket()));
+            ps.setLong(4, row.getValue());
+        });
+    }
+
+    /**
+     * Streams {@code app, uri, bucket, hits} for every bucket of the table at or after {@code since}.
+     */
+    public void forEachBucket(RollupGranularity granularity, LocalDateTime since, RowCallbackHandler handler) {
+        jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, r.bucket, r.hits FROM " + granularity.table() + " r"
+                + " JOIN hit_apps a ON a.id = r.app_id"
+                + " JOIN hit_uris u ON u.id = r.uri_id"
+                + " WHERE r.bucket >= :since", new MapSqlParameterSource("since", since), handler);
+    }
+
+    /**
+     * Total hits per (app, uri) summed over the given segments in a single query.
+     */
+    public List<ViewStatsDto> getStatsTotal(List<RangeSegment> segments, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return jdbcTemplate.query(statsTotalSql(segments, uris, params), params,
+                (rs, rowNum) -> new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("hits")));
+    }
+
+    /**
+     * Same as {@link #getStatsTotal}, but hands rows to {@code sink} as they are read from a cursor.
+     * Must run inside a transaction for the cursor to take effect.
+     */
+    public void streamStatsTotal(List<RangeSegment> segments, List<String> uris, Consumer<ViewStatsDto> sink) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        cursorQueries.forEachStat(statsTotalSql(segments, uris, params), params, "hits", sink);
+    }
+
+    private String statsTotalSql(List<RangeSegment> segments, List<String> uris, MapSqlParameterSource params) {
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE name IN (:uris))";
+        }
+        StringJoiner union = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < segments.size(); i++) {
+            RangeSegment segment = segments.get(i);
+            params.addValue("from" + i, segment.from());
+            params.addValue("to" + i, segment.to());
+            if (segment.isRaw()) {
+                union.add("SELECT app_id, uri_id, COUNT(*) AS hits FROM endpoint_hits"
+                        + " WHERE timestamp >= :from" + i
+                        + " AND timestamp " + (segment.closed() ? "<=" : "<") + " :to" + i
+                        + uriFilter + " GROUP BY app_id, uri_id");
+            } else {
+                union.add("SELECT app_id, uri_id, SUM(hits) AS hits FROM " + segment.granularity().table()
+                        + " WHERE bucket >= :from" + i + " AND bucket < :to" + i
+                        + uriFilter + " GROUP BY app_id, uri_id");
+            }
+        }
+        return "SELECT a.name AS app, u.name AS uri, t.hits FROM ("
+                + "SELECT app_id, uri_id, SUM(hits) AS hits FROM (" + union + ") s GROUP BY app_id, uri_id) t"
+                + " JOIN hit_apps a ON a.id = t.app_id"
+                + " JOIN hit_uris u ON u.id = t.uri_id"
+                + " ORDER BY t.hits DESC";
+    }
+
+    /**
+     * Total hits per (bucket, app, uri) at the given width, summed over segments no coarser than that width.
+     */
+    public List<SeriesPointDto> getSeriesTotal(RollupGranularity granularity, List<RangeSegment> segments,
+                                               List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        String uriFilter = "";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            uriFilter = " AND uri_id IN (SELECT id FROM hit_uris WHERE name IN (:uris))";
+        }
+        String unit = "'" + granularity.sqlUnit() + "'";
+        StringJoiner union = new StringJoiner(" UNION ALL ");
+        for (int i = 0; i < segments.size(); i++) {
+            RangeSegment segment = segments.get(i);
+            params.addValue("from" + i, segment.from());
+            params.addValue("to" + i, segment.to());
+            if (segment.isRaw()) {
+                union.add("SELECT app_id, uri_id, date_trunc(" + unit + ", timestamp) AS bucket,"
+                        + " COUNT(*) AS hits FROM endpoint_hits"
+                        + " WHERE timestamp >= :from" + i
+                        + " AND timestamp " + (segment.closed() ? "<=" : "<") + " :to" + i
+                        + uriFilter + " GROUP BY 1, 2, 3");
+            } else {
+                union.add("SELECT app_id, uri_id, date_trunc(" + unit + ", bucket) AS bucket, SUM(hits) AS hits"
+                        + " FROM " + segment.granularity().table()
+                        + " WHERE bucket >= :from" + i + " AND bucket < :to" + i
+                        + uriFilter + " GROUP BY 1, 2, 3");
+            }
+        }
+        String sql = "SELECT a.name AS app, u.name AS uri, t.bucket, t.hits FROM ("
+                + "SELECT app_id, uri_id, bucket, SUM(hits) AS hits FROM (" + union + ") s"
+                + " GROUP BY app_id, uri_id, bucket) t"
+                + " JOIN hit_apps a ON a.id = t.app_id"
+                + " JOIN hit_uris u ON u.id = t.uri_id"
+                + " ORDER BY t.bucket, t.hits DESC";
+        return jdbcTemplate.query(sql, params, (rs, rowNum) -> new SeriesPointDto(rs.getString("app"),
+                rs.getString("uri"), rs.getObject("bucket", LocalDateTime.class), rs.getLong("hits")));
+    }
+}
@@ -0,0 +1,144 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.RowCallbackHandler;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.server.model.BucketKey;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+@Repository
+@RequiredArgsConstructor
+public class HitSketchRepository {
+
+    private static final byte[] EMPTY = new byte[0];
+    private static final LocalDateTime SUSPENDED = LocalDateTime.of(9999, 1, 1, 0, 0);
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public LocalDateTime getCoverageStart() {
+        return jdbcTemplate.getJdbcTemplate()
+                .queryForObject("SELECT since FROM hit_sketch_coverage WHERE id = 1", LocalDateTime.class);
+    }
+
+    /**
+     * Marks the sketches as no longer maintained, so no range is answered from them.
+     */
+    public void suspendCoverage() {
+        jdbcTemplate.getJdbcTemplate().update("UPDATE hit_sketch_coverage SET since = ? WHERE id = 1",
+                Timestamp.valueOf(SUSPENDED));
+    }
+
+    /**
+     * Restarts coverage at {@code since} if the sketches were suspended; otherwise leaves it as it is.
+     */
+    public void resumeCoverage(LocalDateTime since) {
+        jdbcTemplate.getJdbcTemplate().update("UPDATE hit_sketch_coverage SET since = ? WHERE id = 1 AND since > ?",
+                Timestamp.valueOf(since), Timestamp.valueOf(since));
+    }
+
+    /**
+     * Makes sure a row exists for every key so it can be locked before the read-modify-write.
+     */
+    public void createMissing(RollupGranularity granularity, List<BucketKey> keys) {
+        String sql = "INSERT INTO " + table(granularity) + " (app_id, uri_id, bucket, sketch) VALUES (?, ?, ?, ?) "
+                + "ON CONFLICT (bucket, app_id, uri_id) DO NOTHING";
+        jdbcTemplate.getJdbcTemplate().batchUpdate(sql, keys, keys.size(), (ps, key) -> {
+            ps.setInt(1, key.appId());
+            ps.setInt(2, key.uriId());
+            ps.setTimestamp(3, Timestamp.valueOf(key.bucket()));
+            ps.setBytes(4, EMPTY);
+        });
+    }
+
+    /**
+     * Locks the rows of all keys, in primary key order, and returns their current sketches in one statement.
+     */
+    public Map<BucketKey, byte[]> lockAll(RollupGranularity granularity, List<BucketKey> keys) {
+        Map<BucketKey, byte[]> rows = new HashMap<>();
+        jdbcTemplate.getJdbcTemplate().query(con -> {
+            PreparedStatement ps = con.prepareStatement("SELECT t.app_id, t.uri_id, t.bucket, t.sketch"
+                    + " FROM " + table(granularity) + " t"
+                    + " JOIN unnest(?::timestamp[], ?::int[], ?::int[]) AS k(bucket, app_id, uri_id)"
+                    + " ON t.bucket = k.bucket AND t.app_id = k.app_id AND t.uri_id = k.uri_id"
+                    + " ORDER BY t.bucket, t.app_id, t.uri_id FOR UPDATE OF t");
+            ps.setArray(1, con.createArrayOf("timestamp",
+                    keys.stream().map(key -> Timestamp.valueOf(key.bucket())).toArray()));
+            ps.setArray(2, con.createArrayOf("int4", keys.stream().map(BucketKey::appId).toArray()));
+            ps.setArray(3, con.createArrayOf("int4", keys.stream().map(BucketKey::uriId).toArray()));
+            return ps;
+        }, rs -> {
+            rows.put(new BucketKey(rs.getInt("app_id"), rs.getInt("uri_id"),
+                    rs.getObject("bucket", LocalDateTime.class)), rs.getBytes("sketch"));
+        });
+        return rows;
+    }
+
+    public void update(RollupGranularity granularity, Map<BucketKey, byte[]> sketches) {
+        String sql = "UPDATE " + table(granularity) + " SET sketch = ? WHERE bucket = ? AND app_id = ? AND uri_id = ?";
+        List<Map.Entry<BucketKey, byte[]>> rows = List.copyOf(sketches.entrySet());
+        jdbcTemplate.getJdbcTemplate().batchUpdate(sql, rows, rows.size(), (ps, row) -> {
+            ps.setBytes(1, row.getValue());
+            ps.setTimestamp(2, Timestamp.valueOf(row.getKey().bucket()));
+            ps.setInt(3, row.getKey().appId());
+            ps.setInt(4, row.getKey().uriId());
+        });
+    }
+
+    /**
+     * Streams {@code app, uri, sketch} rows of a sketch segment to the handler.
+     */
+    public void forEachSketch(RangeSegment segment, List<String> uris, RowCallbackHandler handler) {
+        MapSqlParameterSource params = rangeParams(segment, uris);
+        jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, s.sketch FROM " + table(segment.granularity()) + " s"
+                + " JOIN hit_apps a ON a.id = s.app_id"
+                + " JOIN hit_uris u ON u.id = s.uri_id"
+                + " WHERE s.bucket >= :from AND s.bucket < :to" + uriFilter(uris), params, handler);
+    }
+
+    /**
+     * Streams distinct {@code app, uri, ip} rows of a raw segment to the handler, with {@code ip} as text.
+     * Compacted hours contribute their visitors only if they lie entirely inside the segment.
+     */
+    public void forEachVisitor(RangeSegment segment, List<String> uris, RowCallbackHandler handler) {
+        MapSqlParameterSource params = rangeParams(segment, uris);
+        String to = (segment.closed() ? "<=" : "<") + " :to";
+        String lastHour = segment.closed() ? "INTERVAL '59 minutes 59 seconds'" : "INTERVAL '1 hour'";
+        jdbcTemplate.query("SELECT a.name AS app, u.name AS uri, host(v.ip) AS ip FROM ("
+                + "SELECT app_id, uri_id, ip FROM endpoint_hits WHERE timestamp >= :from AND timestamp "
+                + to + uriFilter(uris)
+                + " UNION SELECT app_id, uri_id, ip FROM hit_distinct_hour"
+                + " WHERE bucket >= :from AND bucket <= CAST(:to AS timestamp) - " + lastHour + uriFilter(uris)
+                + ") v"
+                + " JOIN hit_apps a ON a.id = v.app_id"
+                + " JOIN hit_uris u ON u.id = v.uri_id", params, handler);
+    }
+
+    private MapSqlParameterSource rangeParams(RangeSegment segment, List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource()
+                .addValue("from", segment.from())
+                .addValue("to", segment.to());
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+        }
+        return params;
+    }
+
+    private String uriFilter(List<String> uris) {
+        return uris != null && !uris.isEmpty() ? " AND uri_id IN (SELECT id FROM hit_uris WHERE name IN (:uris))" : "";
+    }
+
+    private String table(RollupGranularity granularity) {
+        return "hit_sketch_" + granularity.name().toLowerCase(Locale.ROOT);
+    }
+}
@@ -0,0 +1,25 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+
+/**
+ * Position up to which the hit journal has been applied. Saved in the same transaction as the hits it covers.
+ */
+@Repository
+@RequiredArgsConstructor
+public class JournalCheckpointRepository {
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+
+    public long load() {
+        Long position = jdbcTemplate.getJdbcTemplate()
+                .queryForObject("SELECT position FROM hit_journal_checkpoint WHERE id = 1", Long.class);
+        return position == null ? 0 : position;
+    }
+
+    public void save(long position) {
+        jdbcTemplate.getJdbcTemplate().update("UPDATE hit_journal_checkpoint SET position = ? WHERE id = 1", position);
+    }
+}
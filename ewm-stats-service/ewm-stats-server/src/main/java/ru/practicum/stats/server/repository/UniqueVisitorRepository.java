@@ -0,0 +1,72 @@
+package ru.practicum.stats.server.repository;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.stereotype.Repository;
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.sql.PreparedStatement;
+import java.util.List;
+import java.util.function.Consumer;
+
+@Repository
+@RequiredArgsConstructor
+public class UniqueVisitorRepository {
+
+    /*
+     * Only (app, uri, ip) triples that were not seen before come back from the first INSERT,
+     * so each visitor is added to its counter exactly once even under concurrent batches.
+     */
+    private static final String ADD_VISITORS_SQL = """
+            WITH fresh AS (
+                INSERT INTO hit_visitors (app_id, uri_id, ip)
+                SELECT * FROM unnest(?::int4[], ?::int4[], ?::text[]::inet[])
+                ON CONFLICT DO NOTHING
+                RETURNING app_id, uri_id
+            )
+            INSERT INTO hit_unique_totals (app_id, uri_id, visitors)
+            SELECT app_id, uri_id, COUNT(*) FROM fresh
+            GROUP BY app_id, uri_id
+            ORDER BY uri_id, app_id
+            ON CONFLICT (uri_id, app_id) DO UPDATE SET visitors = hit_unique_totals.visitors + EXCLUDED.visitors
+            """;
+
+    private final NamedParameterJdbcTemplate jdbcTemplate;
+    private final CursorQueries cursorQueries;
+
+    public void addVisitors(Integer[] appIds, Integer[] uriIds, String[] ips) {
+        jdbcTemplate.getJdbcTemplate().update(con -> {
+            PreparedStatement ps = con.prepareStatement(ADD_VISITORS_SQL);
+            ps.setArray(1, con.createArrayOf("int4", appIds));
+            ps.setArray(2, con.createArrayOf("int4", uriIds));
+            ps.setArray(3, con.createArrayOf("text", ips));
+            return ps;
+        });
+    }
+
+    public List<ViewStatsDto> getAllTimeUnique(List<String> uris) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        return jdbcTemplate.query(allTimeUniqueSql(uris, params), params,
+                (rs, rowNum) -> new ViewStatsDto(rs.getString("app"), rs.getString("uri"), rs.getLong("visitors")));
+    }
+
+    /**
+     * Cursor-backed variant of {@link #getAllTimeUnique}; must run inside a transaction.
+     */
+    public void streamAllTimeUnique(List<String> uris, Consumer<ViewStatsDto> sink) {
+        MapSqlParameterSource params = new MapSqlParameterSource();
+        cursorQueries.forEachStat(allTimeUniqueSql(uris, params), params, "visitors", sink);
+    }
+
+    private String allTimeUniqueSql(List<String> uris, MapSqlParameterSource params) {
+        String sql = "SELECT a.name AS app, u.name AS uri, t.visitors FROM hit_unique_totals t"
+                + " JOIN hit_apps a ON a.id = t.app_id"
+                + " JOIN hit_uris u ON u.id = t.uri_id";
+        if (uris != null && !uris.isEmpty()) {
+            params.addValue("uris", uris);
+            sql += " WHERE u.name IN (:uris)";
+        }
+        return sql + " ORDER BY t.visitors DESC";
+    }
+}
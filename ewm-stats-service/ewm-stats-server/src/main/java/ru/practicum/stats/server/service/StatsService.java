@@ -1,13 +1,46 @@
 package ru.practicum.stats.server.service;
 
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.SeriesInterval;
+import ru.practicum.stats.dto.SeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.service.plan.PlannedStats;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.function.Consumer;
 
 public interface StatsService {
     void saveHit(HitDto dto);
 
-    List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique);
-}
\ No newline at end of file
+    void saveHits(List<HitDto> dtos);
+
+    /**
+     * Loads newline-delimited {@link HitDto} JSON in large COPY batches, bypassing the ingest buffer.
+     *
+     * @return number of hits imported
+     */
+    long importHits(InputStream body) throws IOException;
+
+    /**
+     * Stats for the window, along with the plan that produced them.
+     */
+    PlannedStats getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                          boolean approximate);
+
+    /**
+     * Same result as {@link #getStats}, handed to {@code sink} row by row without collecting it first.
+     */
+    void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique, boolean approximate,
+                     Consumer<ViewStatsDto> sink);
+
+    /**
+     * Approximate most viewed series for the window, at most {@code limit} of them.
+     */
+    List<ViewStatsDto> getTop(LocalDateTime start, LocalDateTime end, int limit);
+
+    List<SeriesPointDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris, SeriesInterval interval,
+                                   boolean unique);
+}
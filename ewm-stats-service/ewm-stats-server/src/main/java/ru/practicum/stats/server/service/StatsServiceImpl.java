@@ -1,40 +1,249 @@
 package ru.practicum.stats.server.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.validation.ConstraintViolation;
+import jakarta.validation.Validator;
 import lombok.RequiredArgsConstructor;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.server.ResponseStatusException;
 import ru.practicum.stats.dto.HitDto;
+import ru.practicum.stats.dto.SeriesInterval;
+import ru.practicum.stats.dto.SeriesPointDto;
 import ru.practicum.stats.dto.ViewStatsDto;
 import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.model.SeriesKey;
 import ru.practicum.stats.server.repository.EndpointHitRepository;
+import ru.practicum.stats.server.repository.HitRollupRepository;
+import ru.practicum.stats.server.repository.UniqueVisitorRepository;
+import ru.practicum.stats.server.service.bitmap.ExactUniqueStats;
+import ru.practicum.stats.server.service.cache.StatsQueryCache;
+import ru.practicum.stats.server.service.ingest.HitIngestor;
+import ru.practicum.stats.server.service.ingest.HitRecorder;
+import ru.practicum.stats.server.service.ingest.IngestAdmission;
+import ru.practicum.stats.server.service.ingest.WriteMethod;
+import ru.practicum.stats.server.service.plan.PlannedStats;
+import ru.practicum.stats.server.service.plan.QueryPlan;
+import ru.practicum.stats.server.service.plan.StatsQueryPlanner;
+import ru.practicum.stats.server.service.recent.RecentHitCounters;
+import ru.practicum.stats.server.service.sketch.ApproximateUniqueStats;
+import ru.practicum.stats.server.service.top.TopHitTracker;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
 
 @Service
 @RequiredArgsConstructor
 public class StatsServiceImpl implements StatsService {
 
     private final EndpointHitRepository repository;
+    private final HitRollupRepository rollupRepository;
+    private final UniqueVisitorRepository visitorRepository;
+    private final ApproximateUniqueStats approximateUniqueStats;
+    private final ExactUniqueStats exactUniqueStats;
+    private final HitIngestor ingestor;
+    private final IngestAdmission admission;
+    private final RecentHitCounters recentHitCounters;
+    private final TopHitTracker topHitTracker;
+    private final HitRecorder recorder;
+    private final ObjectMapper objectMapper;
+    private final Validator validator;
+    private final StatsQueryCache queryCache;
+    private final PlatformTransactionManager transactionManager;
+    private final StatsQueryPlanner planner;
+
+    @Value("${stats.import.batch-size:10000}")
+    private int importBatchSize;
 
     @Override
-    @Transactional
     public void saveHit(HitDto dto) {
-        EndpointHit hit = EndpointHit.builder()
+        checkAdmission(1);
+        ingestor.ingest(List.of(toEntity(dto)));
+    }
+
+    @Override
+    public void saveHits(List<HitDto> dtos) {
+        checkAdmission(dtos.size());
+        ingestor.ingest(dtos.stream().map(this::toEntity).toList());
+    }
+
+    /**
+     * Each batch is committed on its own, so a bad line stops the import with the batches before it kept.
+     */
+    @Override
+    public long importHits(InputStream body) throws IOException {
+        long imported = 0;
+        long line = 0;
+        List<EndpointHit> batch = new ArrayList<>(importBatchSize);
+        try (MappingIterator<HitDto> rows = objectMapper.readerFor(HitDto.class).readValues(body)) {
+            while (rows.hasNextValue()) {
+                line++;
+                HitDto dto = rows.nextValue();
+                Set<ConstraintViolation<HitDto>> violations = validator.validate(dto);
+                if (!violations.isEmpty()) {
+                    ConstraintViolation<HitDto> violation = violations.iterator().next();
+                    throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Line " + line + ": "
+                            + violation.getPropertyPath() + " " + violation.getMessage() + ", " + imported
+                            + " hits imported");
+                }
+                batch.add(toEntity(dto));
+                if (batch.size() == importBatchSize) {
+                    recorder.record(batch, WriteMethod.COPY);
+                    imported += batch.size();
+                    batch = new ArrayList<>(importBatchSize);
+                }
+            }
+        } catch (JsonProcessingException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Line " + (line + 1) + ": "
+                    + e.getOriginalMessage() + ", " + imported + " hits imported");
+        }
+        recorder.record(batch, WriteMethod.COPY);
+        return imported + batch.size();
+    }
+
+    /**
+     * Cache hits return without touching the database, so the transaction is only opened on a miss.
+     */
+    @Override
+    public PlannedStats getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                 boolean approximate) {
+        checkRange(start, end, unique);
+        QueryPlan[] executed = new QueryPlan[1];
+        List<ViewStatsDto> stats = queryCache.get(start, end, uris, unique, approximate, () -> {
+            TransactionTemplate readOnly = new TransactionTemplate(transactionManager);
+            readOnly.setReadOnly(true);
+            return readOnly.execute(status -> {
+                executed[0] = planner.plan(start, end, unique, approximate);
+                return execute(executed[0], uris);
+            });
+        });
+        return new PlannedStats(stats, executed[0] == null ? "CACHED" : executed[0].describe());
+    }
+
+    private List<ViewStatsDto> execute(QueryPlan plan, List<String> uris) {
+        return switch (plan.strategy()) {
+            case TOTAL -> getStatsTotal(plan, uris);
+            case ALL_TIME_UNIQUE -> visitorRepository.getAllTimeUnique(uris);
+            case BITMAP_UNIQUE -> exactUniqueStats.getStats(plan.segments(), uris);
+            case SKETCH_UNIQUE -> approximateUniqueStats.getStats(plan.segments(), uris);
+            case DISTINCT_UNIQUE -> repository.getStatsUnique(plan.start(), plan.end(), uris);
+        };
+    }
+
+    /**
+     * Wide results come straight off a database cursor. The recent-hits counters are skipped here because
+     * merging them in would mean collecting the whole result; approximate results are built in memory anyway.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public void streamStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                            boolean approximate, Consumer<ViewStatsDto> sink) {
+        checkRange(start, end, unique);
+        if (!unique) {
+            rollupRepository.streamStatsTotal(planner.totalRanges(start, end, RollupGranularity.DAY), uris, sink);
+        } else if (planner.coversAllHits(start, end)) {
+            visitorRepository.streamAllTimeUnique(uris, sink);
+        } else if (approximate) {
+            approximateUniqueStats.getStats(start, end, uris).forEach(sink);
+        } else {
+            repository.streamStatsUnique(start, end, uris, sink);
+        }
+    }
+
+    /**
+     * Answered from the in-memory heavy-hitter sketches; windows older than they keep fall back to rollups.
+     * The limit is capped at the number of candidates each sketch tracks.
+     */
+    @Override
+    @Transactional(readOnly = true)
+    public List<ViewStatsDto> getTop(LocalDateTime start, LocalDateTime end, int limit) {
+        int capped = Math.min(limit, topHitTracker.maxLimit());
+        List<ViewStatsDto> top = topHitTracker.getTop(start, end, capped);
+        if (top != null) {
+            return top;
+        }
+        List<ViewStatsDto> all = rollupRepository.getStatsTotal(
+                planner.totalRanges(start, end, RollupGranularity.DAY), null);
+        return all.size() > capped ? List.copyOf(all.subList(0, capped)) : all;
+    }
+
+    @Override
+    @Transactional(readOnly = true)
+    public List<SeriesPointDto> getSeries(LocalDateTime start, LocalDateTime end, List<String> uris,
+                                          SeriesInterval interval, boolean unique) {
+        RollupGranularity granularity = RollupGranularity.of(interval);
+        checkRange(start, end, unique);
+        if (unique) {
+            if (granularity == RollupGranularity.MINUTE && planner.reachesCompactedHours(start)) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                        "Compacted hours keep unique visitors per hour, a MINUTE series cannot reach into them");
+            }
+            return repository.getSeriesUnique(granularity, start, end, uris);
+        }
+        return rollupRepository.getSeriesTotal(granularity, planner.totalRanges(start, end, granularity), uris);
+    }
+
+    /**
+     * Database segments and the recent-hits tail are read separately and summed per series.
+     */
+    private List<ViewStatsDto> getStatsTotal(QueryPlan plan, List<String> uris) {
+        if (plan.recentFrom() == null) {
+            return rollupRepository.getStatsTotal(plan.segments(), uris);
+        }
+        List<ViewStatsDto> hot = recentHitCounters.getStats(plan.recentFrom(), plan.end(), uris);
+        if (plan.segments().isEmpty()) {
+            return hot;
+        }
+        List<ViewStatsDto> cold = rollupRepository.getStatsTotal(plan.segments(), uris);
+        Map<SeriesKey, Long> totals = new HashMap<>();
+        Stream.concat(cold.stream(), hot.stream())
+                .forEach(dto -> totals.merge(new SeriesKey(dto.getApp(), dto.getUri()), dto.getHits(), Long::sum));
+        return totals.entrySet().stream()
+                .map(e -> new ViewStatsDto(e.getKey().app(), e.getKey().uri(), e.getValue()))
+                .sorted(Comparator.comparing(ViewStatsDto::getHits).reversed())
+                .toList();
+    }
+
+    private void checkRange(LocalDateTime start, LocalDateTime end, boolean unique) {
+        if (unique && planner.splitsCompactedHour(start, end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Compacted hours keep unique visitors per hour only, start and end must fall on whole hours there");
+        }
+        if (!unique && planner.splitsCompactedMinute(start, end)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST,
+                    "Compacted hours keep hit totals per minute only, start must fall on a whole minute there "
+                            + "and end on the last second of one");
+        }
+    }
+
+    private void checkAdmission(int hits) {
+        if (!admission.admit(hits)) {
+            throw new ResponseStatusException(HttpStatus.TOO_MANY_REQUESTS, "Stats ingest is overloaded, retry later");
+        }
+    }
+
+    private EndpointHit toEntity(HitDto dto) {
+        return EndpointHit.builder()
                 .app(dto.getApp())
                 .uri(dto.getUri())
                 .ip(dto.getIp())
                 .timestamp(dto.getTimestamp())
                 .build();
-        repository.save(hit);
-    }
-
-    @Override
-    @Transactional(readOnly = true)
-    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique) {
-        boolean urisNull = (uris == null || uris.isEmpty());
-        return unique
-                ? repository.getStatsUnique(start, end, uris, urisNull)
-                : repository.getStatsTotal(start, end, uris, urisNull);
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,73 @@
+package ru.practicum.stats.server.service.bitmap;
+
+import jakarta.annotation.PostConstruct;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.BucketKey;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.repository.HitBitmapRepository;
+import ru.practicum.stats.server.service.ingest.HitAggregator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Adds visitor ids to the hourly and daily bitmaps used by exact unique queries. Each batch locks and reads
+ * all its rows in one statement and writes them back in one JDBC batch.
+ * <p>
+ * With {@code stats.bitmaps.enabled} off nothing is written and the bitmaps are marked as not covering
+ * anything; turning it back on restarts coverage from the next full hour.
+ */
+@Component
+public class BitmapAggregator implements HitAggregator {
+
+    private static final List<RollupGranularity> GRANULARITIES = List.of(RollupGranularity.HOUR, RollupGranularity.DAY);
+
+    private final HitBitmapRepository bitmapRepository;
+    private final boolean enabled;
+
+    public BitmapAggregator(HitBitmapRepository bitmapRepository,
+                            @Value("${stats.bitmaps.enabled:false}") boolean enabled) {
+        this.bitmapRepository = bitmapRepository;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void initCoverage() {
+        if (enabled) {
+            bitmapRepository.resumeCoverage(RollupGranularity.HOUR.floor(LocalDateTime.now()).plusHours(1));
+        } else {
+            bitmapRepository.suspendCoverage();
+        }
+    }
+
+    @Override
+    public void apply(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (RollupGranularity granularity : GRANULARITIES) {
+            Map<BucketKey, RoaringBitmap> batch = new TreeMap<>();
+            for (EndpointHit hit : hits) {
+                batch.computeIfAbsent(BucketKey.of(hit, granularity), k -> new RoaringBitmap()).add(hit.getIpId());
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<BucketKey> keys = List.copyOf(batch.keySet());
+            bitmapRepository.createMissing(granularity, keys);
+            Map<BucketKey, byte[]> stored = bitmapRepository.lockAll(granularity, keys);
+            Map<BucketKey, byte[]> merged = new TreeMap<>();
+            for (Map.Entry<BucketKey, RoaringBitmap> entry : batch.entrySet()) {
+                RoaringBitmap bitmap = Bitmaps.fromBytes(stored.get(entry.getKey()));
+                bitmap.or(entry.getValue());
+                merged.put(entry.getKey(), Bitmaps.toBytes(bitmap));
+            }
+            bitmapRepository.update(granularity, merged);
+        }
+    }
+}
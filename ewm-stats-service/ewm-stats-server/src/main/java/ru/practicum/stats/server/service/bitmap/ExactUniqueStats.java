@@ -0,0 +1,73 @@
+package ru.practicum.stats.server.service.bitmap;
+
+import lombok.RequiredArgsConstructor;
+import org.roaringbitmap.RoaringBitmap;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.model.SeriesKey;
+import ru.practicum.stats.server.repository.HitBitmapRepository;
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+import ru.practicum.stats.server.service.rollup.RollupRanges;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Exact unique visitor counts from the union of the stored visitor bitmaps of every bucket in the range.
+ * Edges finer than an hour, and hours older than the bitmaps, add their visitor ids from raw hits to the
+ * same bitmaps, so a visitor seen in both is still counted once.
+ */
+@Component
+@RequiredArgsConstructor
+public class ExactUniqueStats {
+
+    private final HitBitmapRepository bitmapRepository;
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return getStats(plan(start, end), uris);
+    }
+
+    /**
+     * Counts over segments already laid out by {@link #plan}.
+     */
+    public List<ViewStatsDto> getStats(List<RangeSegment> segments, List<String> uris) {
+        Map<SeriesKey, RoaringBitmap> visitors = new HashMap<>();
+        for (RangeSegment segment : segments) {
+            if (segment.isRaw()) {
+                bitmapRepository.forEachVisitorId(segment, uris, rs -> visitors
+                        .computeIfAbsent(new SeriesKey(rs.getString("app"), rs.getString("uri")), k -> new RoaringBitmap())
+                        .add(rs.getInt("visitor_id")));
+            } else {
+                bitmapRepository.forEachBitmap(segment, uris, rs -> visitors
+                        .computeIfAbsent(new SeriesKey(rs.getString("app"), rs.getString("uri")), k -> new RoaringBitmap())
+                        .or(Bitmaps.fromBytes(rs.getBytes("bitmap"))));
+            }
+        }
+        List<ViewStatsDto> result = new ArrayList<>(visitors.size());
+        visitors.forEach((key, ids) -> result.add(new ViewStatsDto(key.app(), key.uri(), ids.getLongCardinality())));
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Whole buckets from the coverage start on, raw segments for the edges and for anything older.
+     */
+    public List<RangeSegment> plan(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime coverage = bitmapRepository.getCoverageStart();
+        if (!start.isBefore(coverage)) {
+            return RollupRanges.split(start, end, RollupGranularity.HOUR);
+        }
+        if (end.isBefore(coverage)) {
+            return List.of(RangeSegment.raw(start, end, true));
+        }
+        List<RangeSegment> segments = new ArrayList<>();
+        segments.add(RangeSegment.raw(start, coverage, false));
+        segments.addAll(RollupRanges.split(coverage, end, RollupGranularity.HOUR));
+        return segments;
+    }
+}
@@ -0,0 +1,157 @@
+package ru.practicum.stats.server.service.cache;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.EndpointHitRepository;
+import ru.practicum.stats.server.service.ingest.HitListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Result cache for {@code /stats}. A window that ended more than {@code grace} ago no longer receives late
+ * hits, so its result is kept for {@code closed-ttl}; windows still open are kept only for {@code open-ttl}.
+ * <p>
+ * Keys are normalised so that equivalent queries share an entry: uris are sorted and deduplicated, a start
+ * before the earliest stored hit becomes "since the beginning", and an end in the future becomes "until now".
+ * The latter is what callers asking for all-time stats send, shifted by a second on every call.
+ * <p>
+ * Results are loaded by the calling thread outside the cache, so a slow query holds no cache lock. Every
+ * entry remembers the generation it was loaded in, and invalidation starts a new generation: a result whose
+ * load overlapped an invalidation is neither stored nor, if it got in anyway, served.
+ */
+@Component
+public class StatsQueryCache implements HitListener {
+
+    private static final LocalDateTime BEGINNING = LocalDateTime.MIN;
+    private static final LocalDateTime NOW = LocalDateTime.MAX;
+
+    private final EndpointHitRepository hitRepository;
+    private final boolean enabled;
+    private final Duration grace;
+    private final long openTtlNanos;
+    private final long closedTtlNanos;
+    private final Cache<Key, Entry> cache;
+    private final AtomicLong generation = new AtomicLong();
+
+    /*
+     * Only ever lowered while running, so a stale value after old partitions are dropped
+     * just leaves some starts un-normalised.
+     */
+    private volatile LocalDateTime earliestHit;
+
+    public StatsQueryCache(EndpointHitRepository hitRepository,
+                           MeterRegistry registry,
+                           @Value("${stats.cache.enabled:true}") boolean enabled,
+                           @Value("${stats.cache.max-size:10000}") long maxSize,
+                           @Value("${stats.cache.grace:1m}") Duration grace,
+                           @Value("${stats.cache.open-ttl:5s}") Duration openTtl,
+                           @Value("${stats.cache.closed-ttl:24h}") Duration closedTtl) {
+        this.hitRepository = hitRepository;
+        this.enabled = enabled;
+        this.grace = grace;
+        this.openTtlNanos = openTtl.toNanos();
+        this.closedTtlNanos = closedTtl.toNanos();
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfter(new Expiry<Key, Entry>() {
+                    @Override
+                    public long expireAfterCreate(Key key, Entry entry, long currentTime) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterUpdate(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return entry.ttlNanos();
+                    }
+
+                    @Override
+                    public long expireAfterRead(Key key, Entry entry, long currentTime, long currentDuration) {
+                        return currentDuration;
+                    }
+                })
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(registry, cache, "stats.query");
+        Gauge.builder("stats.query.cache.hit.ratio", cache, c -> c.stats().hitRate())
+                .description("Share of /stats queries answered from the cache")
+                .register(registry);
+    }
+
+    @PostConstruct
+    void init() {
+        earliestHit = hitRepository.findEarliestTimestamp();
+    }
+
+    public List<ViewStatsDto> get(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                                  boolean approximate, Supplier<List<ViewStatsDto>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        LocalDateTime now = LocalDateTime.now();
+        LocalDateTime earliest = earliestHit;
+        Key key = new Key(
+                earliest == null || !start.isAfter(earliest) ? BEGINNING : start,
+                end.isBefore(now) ? end : NOW,
+                uris == null ? List.of() : uris.stream().distinct().sorted().toList(),
+                unique,
+                approximate);
+        long loadedIn = generation.get();
+        Entry cached = cache.getIfPresent(key);
+        if (cached != null && cached.generation() == loadedIn) {
+            return cached.stats();
+        }
+        List<ViewStatsDto> stats = List.copyOf(loader.get());
+        if (generation.get() == loadedIn) {
+            long ttl = end.isBefore(now.minus(grace)) ? closedTtlNanos : openTtlNanos;
+            cache.put(key, new Entry(stats, ttl, loadedIn));
+        }
+        return stats;
+    }
+
+    /**
+     * A hit older than the grace period, e.g. replayed after an outage, may belong to a window that is
+     * already cached as closed, and one older than the earliest hit changes what "since the beginning" means.
+     * Both are rare, so they simply drop the whole cache.
+     */
+    @Override
+    public void onCommitted(List<EndpointHit> hits) {
+        LocalDateTime oldest = null;
+        for (EndpointHit hit : hits) {
+            if (oldest == null || hit.getTimestamp().isBefore(oldest)) {
+                oldest = hit.getTimestamp();
+            }
+        }
+        if (oldest == null) {
+            return;
+        }
+        LocalDateTime earliest = earliestHit;
+        boolean newEarliest = earliest == null || oldest.isBefore(earliest);
+        if (newEarliest) {
+            earliestHit = oldest;
+        }
+        if (newEarliest || oldest.isBefore(LocalDateTime.now().minus(grace))) {
+            generation.incrementAndGet();
+            cache.invalidateAll();
+        }
+    }
+
+    private record Key(LocalDateTime start, LocalDateTime end, List<String> uris, boolean unique,
+                       boolean approximate) {
+    }
+
+    private record Entry(List<ViewStatsDto> stats, long ttlNanos, long generation) {
+    }
+}
@@ -0,0 +1,77 @@
+package ru.practicum.stats.server.service.dictionary;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.HitDictionaryRepository;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+/**
+ * Maps app and uri names and visitor addresses to their dictionary ids, caching the ids that were already
+ * looked up. Each cache holds at most {@code stats.dictionary.cache-size} entries and evicts the ones used
+ * least, so a busy site keeps its hot names cached instead of starting over from an empty cache.
+ */
+@Component
+public class HitDictionary {
+
+    private final HitDictionaryRepository repository;
+    private final Cache<String, Integer> appIds;
+    private final Cache<String, Integer> uriIds;
+    private final Cache<String, Integer> ipIds;
+
+    public HitDictionary(HitDictionaryRepository repository,
+                         @Value("${stats.dictionary.cache-size:100000}") int cacheSize) {
+        this.repository = repository;
+        this.appIds = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.uriIds = Caffeine.newBuilder().maximumSize(cacheSize).build();
+        this.ipIds = Caffeine.newBuilder().maximumSize(cacheSize).build();
+    }
+
+    /**
+     * Fills in {@code appId}, {@code uriId} and {@code ipId} of every hit. Must not run inside the transaction
+     * that writes the hits: ids cached from a rolled back transaction would point at rows that were never committed.
+     */
+    public void encode(List<EndpointHit> hits) {
+        Map<String, Integer> apps = resolve(appIds, hits, EndpointHit::getApp,
+                names -> repository.resolve(HitDictionaryRepository.APPS, names));
+        Map<String, Integer> uris = resolve(uriIds, hits, EndpointHit::getUri,
+                names -> repository.resolve(HitDictionaryRepository.URIS, names));
+        Map<String, Integer> ips = resolve(ipIds, hits, EndpointHit::getIp, repository::resolveIps);
+        for (EndpointHit hit : hits) {
+            hit.setAppId(apps.get(hit.getApp()));
+            hit.setUriId(uris.get(hit.getUri()));
+            hit.setIpId(ips.get(hit.getIp()));
+        }
+    }
+
+    private Map<String, Integer> resolve(Cache<String, Integer> cache, List<EndpointHit> hits,
+                                         Function<EndpointHit, String> name,
+                                         Function<Set<String>, Map<String, Integer>> loader) {
+        Set<String> names = hits.stream().map(name).collect(Collectors.toSet());
+        Map<String, Integer> ids = new HashMap<>();
+        Set<String> missing = new HashSet<>();
+        for (String value : names) {
+            Integer id = cache.getIfPresent(value);
+            if (id != null) {
+                ids.put(value, id);
+            } else {
+                missing.add(value);
+            }
+        }
+        if (!missing.isEmpty()) {
+            Map<String, Integer> loaded = loader.apply(missing);
+            cache.putAll(loaded);
+            ids.putAll(loaded);
+        }
+        return ids;
+    }
+}
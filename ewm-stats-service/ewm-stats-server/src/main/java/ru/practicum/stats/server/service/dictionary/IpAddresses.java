@@ -0,0 +1,22 @@
+package ru.practicum.stats.server.service.dictionary;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+public final class IpAddresses {
+
+    private IpAddresses() {
+    }
+
+    /**
+     * Binary form of a validated IP literal. PostgreSQL and Java print the same IPv6 address differently,
+     * so anything that compares addresses across the two (such as sketch hashing) must use these bytes.
+     */
+    public static byte[] toBytes(String ip) {
+        try {
+            return InetAddress.getByName(ip).getAddress();
+        } catch (UnknownHostException e) {
+            throw new IllegalArgumentException("Not an IP address: " + ip, e);
+        }
+    }
+}
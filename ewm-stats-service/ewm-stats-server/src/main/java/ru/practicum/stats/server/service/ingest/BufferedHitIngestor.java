@@ -0,0 +1,199 @@
+package ru.practicum.stats.server.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind ingest: hits are acknowledged as soon as they are queued, and a single flusher thread
+ * writes them out in batches once {@code batch-size} hits are collected or {@code flush-interval} passes.
+ * When the queue is full new hits are dropped and counted, as are hits the database refuses for good; a
+ * batch that fails for any other reason is retried whole. On shutdown the flusher drains the queue after the
+ * web server has stopped accepting requests.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "buffered")
+public class BufferedHitIngestor implements HitIngestor, SmartLifecycle {
+
+    private final HitRecorder recorder;
+    private final BlockingQueue<EndpointHit> queue;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+    private final WriteMethod writeMethod;
+
+    private final Counter dropped;
+    private final Counter flushFailures;
+    private final Timer flushTimer;
+
+    private volatile boolean running;
+    private Thread flusher;
+
+    public BufferedHitIngestor(HitRecorder recorder,
+                               MeterRegistry registry,
+                               @Value("${stats.ingest.buffer.capacity:100000}") int capacity,
+                               @Value("${stats.ingest.buffer.batch-size:1000}") int batchSize,
+                               @Value("${stats.ingest.buffer.flush-interval:500ms}") Duration flushInterval,
+                               @Value("${stats.ingest.buffer.shutdown-timeout:20s}") Duration shutdownTimeout,
+                               @Value("${stats.ingest.buffer.write-method:INSERT}") WriteMethod writeMethod) {
+        this.recorder = recorder;
+        this.queue = new ArrayBlockingQueue<>(capacity);
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+        this.writeMethod = writeMethod;
+
+        Gauge.builder("stats.ingest.buffer.depth", queue, BlockingQueue::size)
+                .description("Hits waiting to be written")
+                .register(registry);
+        this.dropped = Counter.builder("stats.ingest.buffer.dropped")
+                .description("Hits dropped because the buffer was full or the database refused them")
+                .register(registry);
+        this.flushFailures = Counter.builder("stats.ingest.buffer.flush.failures")
+                .register(registry);
+        this.flushTimer = Timer.builder("stats.ingest.buffer.flush")
+                .description("Time to write one batch")
+                .register(registry);
+    }
+
+    @Override
+    public void ingest(List<EndpointHit> hits) {
+        if (!running) {
+            recorder.record(hits);
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            if (!queue.offer(hit)) {
+                dropped.increment();
+            }
+        }
+    }
+
+    @Override
+    public double saturation() {
+        return (double) queue.size() / (queue.size() + queue.remainingCapacity());
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        flusher = new Thread(this::flushLoop, "hit-buffer-flusher");
+        flusher.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        try {
+            flusher.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (flusher.isAlive()) {
+            log.warn("Hit buffer was not drained within {}, {} hits pending", shutdownTimeout, queue.size());
+        }
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop only after the web server has shut down, so nothing is queued behind the final drain
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void flushLoop() {
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        try {
+            while (running) {
+                fill(batch);
+                if (batch.isEmpty()) {
+                    continue;
+                }
+                if (!flush(batch)) {
+                    TimeUnit.NANOSECONDS.sleep(flushInterval.toNanos());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        drain(batch);
+    }
+
+    private void fill(List<EndpointHit> batch) throws InterruptedException {
+        long deadline = System.nanoTime() + flushInterval.toNanos();
+        while (batch.size() < batchSize) {
+            long remaining = deadline - System.nanoTime();
+            if (remaining <= 0) {
+                return;
+            }
+            EndpointHit hit = queue.poll(remaining, TimeUnit.NANOSECONDS);
+            if (hit == null) {
+                return;
+            }
+            batch.add(hit);
+            queue.drainTo(batch, batchSize - batch.size());
+        }
+    }
+
+    private void drain(List<EndpointHit> batch) {
+        queue.drainTo(batch);
+        while (!batch.isEmpty()) {
+            if (!flush(batch.subList(0, Math.min(batchSize, batch.size())))) {
+                dropped.increment(batch.size());
+                log.error("Dropping {} buffered hits on shutdown", batch.size());
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the hits written, or dropped because the database refuses them, from {@code batch} and tells
+     * whether that emptied it; what is left has to be retried.
+     */
+    private boolean flush(List<EndpointHit> batch) {
+        Timer.Sample sample = Timer.start();
+        try {
+            recorder.record(batch, writeMethod);
+            sample.stop(flushTimer);
+            batch.clear();
+            return true;
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            if (!PoisonHits.isPoison(e)) {
+                log.warn("Could not flush {} buffered hits: {}", batch.size(), e.getMessage());
+                return false;
+            }
+        }
+        int done = PoisonHits.isolate(batch.size(),
+                (from, to) -> recorder.record(batch.subList(from, to), writeMethod),
+                index -> {
+                    dropped.increment();
+                    EndpointHit hit = batch.get(index);
+                    log.error("Dropping buffered hit the database refuses: app={}, uri={}, ip={}",
+                            hit.getApp(), hit.getUri(), hit.getIp());
+                },
+                e -> log.warn("Could not flush buffered hits: {}", e.getMessage()));
+        int size = batch.size();
+        batch.subList(0, done).clear();
+        return done == size;
+    }
+}
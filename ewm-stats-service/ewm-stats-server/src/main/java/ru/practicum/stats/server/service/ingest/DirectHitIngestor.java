@@ -0,0 +1,21 @@
+package ru.practicum.stats.server.service.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.util.List;
+
+@Component
+@RequiredArgsConstructor
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "direct", matchIfMissing = true)
+public class DirectHitIngestor implements HitIngestor {
+
+    private final HitRecorder recorder;
+
+    @Override
+    public void ingest(List<EndpointHit> hits) {
+        recorder.record(hits);
+    }
+}
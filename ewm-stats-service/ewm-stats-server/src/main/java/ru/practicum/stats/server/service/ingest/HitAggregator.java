@@ -0,0 +1,13 @@
+package ru.practicum.stats.server.service.ingest;
+
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.util.List;
+
+/**
+ * Maintains a derived structure from raw hits. Called by {@link HitRecorder} inside the transaction
+ * that inserts the batch, so derived data commits or rolls back together with the hits.
+ */
+public interface HitAggregator {
+    void apply(List<EndpointHit> hits);
+}
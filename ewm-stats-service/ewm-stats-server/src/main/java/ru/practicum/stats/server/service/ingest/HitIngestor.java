@@ -0,0 +1,19 @@
+package ru.practicum.stats.server.service.ingest;
+
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.util.List;
+
+/**
+ * Accepts hits from the API. The implementation is selected with {@code stats.ingest.mode}.
+ */
+public interface HitIngestor {
+    void ingest(List<EndpointHit> hits);
+
+    /**
+     * How full the ingest backlog is, from 0 (empty) to 1 (nothing more can be accepted).
+     */
+    default double saturation() {
+        return 0;
+    }
+}
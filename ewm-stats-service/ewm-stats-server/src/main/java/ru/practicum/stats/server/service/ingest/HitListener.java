@@ -0,0 +1,13 @@
+package ru.practicum.stats.server.service.ingest;
+
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.util.List;
+
+/**
+ * Notified by {@link HitRecorder} after a batch of hits has been committed. Used by in-memory structures,
+ * which cannot take part in the database transaction.
+ */
+public interface HitListener {
+    void onCommitted(List<EndpointHit> hits);
+}
@@ -0,0 +1,99 @@
+package ru.practicum.stats.server.service.ingest;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.EndpointHitRepository;
+import ru.practicum.stats.server.service.dictionary.HitDictionary;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Writes a batch of accepted hits to the database in one transaction. Every ingest mode ends here.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitRecorder {
+
+    private static final double LATENCY_WEIGHT = 0.2;
+
+    private final HitDictionary dictionary;
+    private final EndpointHitRepository hitRepository;
+    private final List<HitAggregator> aggregators;
+    private final List<HitListener> listeners;
+    private final TransactionTemplate transactionTemplate;
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile double latencyNanos;
+    private volatile long lastWriteAt = System.nanoTime() - Long.MAX_VALUE / 2;
+
+    public void record(List<EndpointHit> hits) {
+        record(hits, WriteMethod.INSERT);
+    }
+
+    public void record(List<EndpointHit> hits, WriteMethod writeMethod) {
+        record(hits, writeMethod, () -> {
+        });
+    }
+
+    /**
+     * Also runs {@code inTransaction} in the write transaction, so it commits or rolls back with the hits.
+     */
+    public void record(List<EndpointHit> hits, WriteMethod writeMethod, Runnable inTransaction) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        long started = System.nanoTime();
+        inFlight.incrementAndGet();
+        try {
+            write(hits, writeMethod, inTransaction);
+        } finally {
+            inFlight.decrementAndGet();
+            observeLatency(System.nanoTime() - started);
+        }
+        for (HitListener listener : listeners) {
+            listener.onCommitted(hits);
+        }
+    }
+
+    /**
+     * Writes currently waiting for or holding a connection.
+     */
+    public int inFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Exponentially weighted average duration of recent writes, or zero if nothing was written in the last
+     * {@code window}: an idle or fully shed ingest path has no evidence of a slow database.
+     */
+    public Duration recentLatency(Duration window) {
+        if (System.nanoTime() - lastWriteAt > window.toNanos()) {
+            return Duration.ZERO;
+        }
+        return Duration.ofNanos((long) latencyNanos);
+    }
+
+    private synchronized void observeLatency(long nanos) {
+        latencyNanos += LATENCY_WEIGHT * (nanos - latencyNanos);
+        lastWriteAt = System.nanoTime();
+    }
+
+    private void write(List<EndpointHit> hits, WriteMethod writeMethod, Runnable inTransaction) {
+        dictionary.encode(hits);
+        transactionTemplate.executeWithoutResult(status -> {
+            if (writeMethod == WriteMethod.COPY) {
+                hitRepository.copyAll(hits);
+            } else {
+                hitRepository.insertAll(hits);
+            }
+            for (HitAggregator aggregator : aggregators) {
+                aggregator.apply(hits);
+            }
+            inTransaction.run();
+        });
+    }
+}
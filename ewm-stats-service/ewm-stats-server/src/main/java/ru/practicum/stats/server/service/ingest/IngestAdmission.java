@@ -0,0 +1,79 @@
+package ru.practicum.stats.server.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+
+/**
+ * Admission control for incoming hits. Ingest counts as overloaded while any of these holds:
+ * <ul>
+ *     <li>the ingest backlog is at least {@code max-saturation} full;</li>
+ *     <li>at least {@code max-in-flight} writes are waiting on the database;</li>
+ *     <li>recent writes took {@code max-write-latency} or longer on average.</li>
+ * </ul>
+ * Overloaded requests are rejected straight away, so callers fail fast instead of tying up request threads
+ * behind a slow database. Latency only counts while writes keep completing, so a fully shed direct ingest
+ * lets traffic through again after {@code latency-window} to probe the database.
+ */
+@Component
+public class IngestAdmission {
+
+    private final HitIngestor ingestor;
+    private final HitRecorder recorder;
+    private final boolean enabled;
+    private final double maxSaturation;
+    private final int maxInFlight;
+    private final Duration maxWriteLatency;
+    private final Duration latencyWindow;
+    private final Counter rejected;
+
+    private volatile boolean overloaded;
+
+    public IngestAdmission(HitIngestor ingestor,
+                           HitRecorder recorder,
+                           MeterRegistry registry,
+                           @Value("${stats.admission.enabled:true}") boolean enabled,
+                           @Value("${stats.admission.max-saturation:0.9}") double maxSaturation,
+                           @Value("${stats.admission.max-in-flight:50}") int maxInFlight,
+                           @Value("${stats.admission.max-write-latency:2s}") Duration maxWriteLatency,
+                           @Value("${stats.admission.latency-window:5s}") Duration latencyWindow) {
+        this.ingestor = ingestor;
+        this.recorder = recorder;
+        this.enabled = enabled;
+        this.maxSaturation = maxSaturation;
+        this.maxInFlight = maxInFlight;
+        this.maxWriteLatency = maxWriteLatency;
+        this.latencyWindow = latencyWindow;
+
+        Gauge.builder("stats.ingest.overloaded", this, admission -> admission.overloaded ? 1 : 0)
+                .description("1 while incoming hits are being rejected")
+                .register(registry);
+        Gauge.builder("stats.ingest.write.latency", recorder, r -> r.recentLatency(latencyWindow).toMillis())
+                .description("Average duration of recent hit writes")
+                .baseUnit("milliseconds")
+                .register(registry);
+        this.rejected = Counter.builder("stats.ingest.rejected")
+                .description("Hits rejected by admission control")
+                .register(registry);
+    }
+
+    /**
+     * Returns whether {@code hits} hits may be ingested now, counting them as rejected if not.
+     */
+    public boolean admit(int hits) {
+        if (!enabled) {
+            return true;
+        }
+        overloaded = ingestor.saturation() >= maxSaturation
+                || recorder.inFlight() >= maxInFlight
+                || recorder.recentLatency(latencyWindow).compareTo(maxWriteLatency) >= 0;
+        if (overloaded) {
+            rejected.increment(hits);
+        }
+        return !overloaded;
+    }
+}
@@ -0,0 +1,235 @@
+package ru.practicum.stats.server.service.ingest;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.JournalCheckpointRepository;
+import ru.practicum.stats.server.service.journal.HitJournal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Journaled ingest: hits are acknowledged once they are appended to the memory-mapped {@link HitJournal},
+ * and a single applier thread writes them to the database in batches of {@code batch-size}, or whatever has
+ * arrived within {@code flush-interval}. The journal position reached by a
+ * batch is saved in the same transaction as its hits, so after a crash or a database outage the applier
+ * resumes exactly where the last commit left off: acknowledged hits are neither lost nor applied twice.
+ * A hit the database refuses for good is skipped and counted, with the hits around it still applied.
+ * <p>
+ * On shutdown the applier keeps going for up to {@code shutdown-timeout}; anything left stays in the journal
+ * and is applied after the next start.
+ */
+@Slf4j
+@Component
+@ConditionalOnProperty(name = "stats.ingest.mode", havingValue = "journal")
+public class JournalHitIngestor implements HitIngestor, SmartLifecycle {
+
+    private final HitRecorder recorder;
+    private final JournalCheckpointRepository checkpointRepository;
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final int batchSize;
+    private final Duration flushInterval;
+    private final Duration shutdownTimeout;
+    private final WriteMethod writeMethod;
+    private final long maxLag;
+
+    private final Counter flushFailures;
+    private final Counter rejected;
+    private final Timer flushTimer;
+
+    private volatile HitJournal journal;
+    private volatile long appliedPosition;
+    private volatile boolean running;
+    private Thread applier;
+
+    public JournalHitIngestor(HitRecorder recorder,
+                              JournalCheckpointRepository checkpointRepository,
+                              MeterRegistry registry,
+                              @Value("${stats.ingest.journal.directory:journal}") Path directory,
+                              @Value("${stats.ingest.journal.segment-size:64MB}") DataSize segmentSize,
+                              @Value("${stats.ingest.journal.fsync:false}") boolean fsync,
+                              @Value("${stats.ingest.journal.batch-size:1000}") int batchSize,
+                              @Value("${stats.ingest.journal.flush-interval:500ms}") Duration flushInterval,
+                              @Value("${stats.ingest.journal.shutdown-timeout:20s}") Duration shutdownTimeout,
+                              @Value("${stats.ingest.journal.write-method:INSERT}") WriteMethod writeMethod,
+                              @Value("${stats.ingest.journal.max-lag:1GB}") DataSize maxLag) {
+        this.recorder = recorder;
+        this.checkpointRepository = checkpointRepository;
+        this.directory = directory;
+        this.segmentSize = Math.toIntExact(segmentSize.toBytes());
+        this.fsync = fsync;
+        this.batchSize = batchSize;
+        this.flushInterval = flushInterval;
+        this.shutdownTimeout = shutdownTimeout;
+        this.writeMethod = writeMethod;
+        this.maxLag = maxLag.toBytes();
+
+        Gauge.builder("stats.ingest.journal.lag", this, JournalHitIngestor::lag)
+                .description("Journal bytes not yet applied to the database")
+                .baseUnit("bytes")
+                .register(registry);
+        this.flushFailures = Counter.builder("stats.ingest.journal.flush.failures")
+                .register(registry);
+        this.rejected = Counter.builder("stats.ingest.journal.rejected")
+                .description("Journaled hits the database refused, skipped so the hits after them still apply")
+                .register(registry);
+        this.flushTimer = Timer.builder("stats.ingest.journal.flush")
+                .description("Time to apply one batch")
+                .register(registry);
+    }
+
+    @Override
+    public void ingest(List<EndpointHit> hits) {
+        HitJournal current = journal;
+        if (!running || current == null) {
+            recorder.record(hits);
+            return;
+        }
+        current.append(hits);
+    }
+
+    /**
+     * The journal itself is only bounded by disk, so this is measured against {@code max-lag}.
+     */
+    @Override
+    public double saturation() {
+        return Math.min(1.0, (double) lag() / maxLag);
+    }
+
+    @Override
+    public void start() {
+        appliedPosition = checkpointRepository.load();
+        try {
+            journal = new HitJournal(directory, segmentSize, fsync, appliedPosition);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not open hit journal in " + directory.toAbsolutePath(), e);
+        }
+        log.info("Hit journal opened at {}, {} bytes to apply", directory.toAbsolutePath(), lag());
+        running = true;
+        applier = new Thread(this::applyLoop, "hit-journal-applier");
+        applier.start();
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        LockSupport.unpark(applier);
+        try {
+            applier.join(shutdownTimeout.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        if (applier.isAlive()) {
+            applier.interrupt();
+            log.warn("Hit journal was not applied within {}, {} bytes left for the next start",
+                    shutdownTimeout, lag());
+        }
+        journal.close();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public int getPhase() {
+        // stop only after the web server has shut down, so nothing is appended behind the final apply
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+
+    private void applyLoop() {
+        List<EndpointHit> batch = new ArrayList<>(batchSize);
+        while (!Thread.currentThread().isInterrupted()) {
+            batch.clear();
+            long from = appliedPosition;
+            long to = journal.read(from, batchSize, batch);
+            if (batch.isEmpty()) {
+                if (!running) {
+                    return;
+                }
+                LockSupport.parkNanos(flushInterval.toNanos());
+                continue;
+            }
+            if (batch.size() < batchSize && running) {
+                // give a trickle of hits up to flush-interval to fill the batch
+                LockSupport.parkNanos(flushInterval.toNanos());
+                batch.clear();
+                to = journal.read(from, batchSize, batch);
+            }
+            long applied = apply(batch, from, to);
+            if (applied > from) {
+                appliedPosition = applied;
+                journal.release(applied);
+            }
+            if (applied < to) {
+                LockSupport.parkNanos(flushInterval.toNanos());
+            }
+        }
+    }
+
+    /**
+     * Returns the journal position applied up to, which is short of {@code to} if the batch has to be retried.
+     */
+    private long apply(List<EndpointHit> batch, long from, long to) {
+        Timer.Sample sample = Timer.start();
+        try {
+            recorder.record(batch, writeMethod, () -> checkpointRepository.save(to));
+            sample.stop(flushTimer);
+            return to;
+        } catch (RuntimeException e) {
+            flushFailures.increment();
+            if (!PoisonHits.isPoison(e)) {
+                log.warn("Could not apply {} journaled hits: {}", batch.size(), e.getMessage());
+                return from;
+            }
+            return isolate(batch, from);
+        }
+    }
+
+    /**
+     * Applies a batch the database refused in parts, each with the checkpoint after its last hit, and skips
+     * the hits it refuses on their own.
+     */
+    private long isolate(List<EndpointHit> batch, long from) {
+        long[] ends = new long[batch.size()];
+        long position = from;
+        for (int i = 0; i < ends.length; i++) {
+            position = journal.read(position, 1, null);
+            ends[i] = position;
+        }
+        int done = PoisonHits.isolate(batch.size(),
+                (start, end) -> recorder.record(batch.subList(start, end), writeMethod,
+                        () -> checkpointRepository.save(ends[end - 1])),
+                index -> {
+                    checkpointRepository.save(ends[index]);
+                    rejected.increment();
+                    EndpointHit hit = batch.get(index);
+                    log.error("Skipping journaled hit at {} the database refuses: app={}, uri={}, ip={}",
+                            index == 0 ? from : ends[index - 1], hit.getApp(), hit.getUri(), hit.getIp());
+                },
+                e -> log.warn("Could not apply journaled hits: {}", e.getMessage()));
+        return done == 0 ? from : ends[done - 1];
+    }
+
+    private long lag() {
+        HitJournal current = journal;
+        return current == null ? 0 : current.writePosition() - appliedPosition;
+    }
+}
@@ -0,0 +1,71 @@
+package ru.practicum.stats.server.service.ingest;
+
+import org.springframework.dao.DataIntegrityViolationException;
+
+import java.util.function.Consumer;
+
+/**
+ * Finds the hits of a failed batch that the database refuses outright, e.g. a uri too long for its column,
+ * so that an acknowledged hit which can never be written does not hold back the ones queued after it.
+ * <p>
+ * Only data errors count: an unreachable or busy database fails every part alike, and those batches are
+ * retried whole by the ingestors.
+ */
+final class PoisonHits {
+
+    private PoisonHits() {
+    }
+
+    static boolean isPoison(RuntimeException e) {
+        return e instanceof DataIntegrityViolationException;
+    }
+
+    /**
+     * Writes hits {@code [0, size)} of a batch that failed with a data error in ever smaller halves, down to
+     * the single hits the database refuses, which go to {@code rejector}. Parts are written in order, so
+     * everything before the returned index has been written or rejected and nothing after it. The index is
+     * less than {@code size} only when some other error, passed to {@code onFailure}, stopped the walk.
+     */
+    static int isolate(int size, PartWriter writer, Rejector rejector, Consumer<RuntimeException> onFailure) {
+        int[] done = {0};
+        try {
+            split(0, size, writer, rejector, done);
+        } catch (RuntimeException e) {
+            onFailure.accept(e);
+        }
+        return done[0];
+    }
+
+    private static void split(int from, int to, PartWriter writer, Rejector rejector, int[] done) {
+        if (to - from == 1) {
+            rejector.reject(from);
+            done[0] = to;
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        write(from, middle, writer, rejector, done);
+        write(middle, to, writer, rejector, done);
+    }
+
+    private static void write(int from, int to, PartWriter writer, Rejector rejector, int[] done) {
+        try {
+            writer.write(from, to);
+            done[0] = to;
+        } catch (RuntimeException e) {
+            if (!isPoison(e)) {
+                throw e;
+            }
+            split(from, to, writer, rejector, done);
+        }
+    }
+
+    @FunctionalInterface
+    interface PartWriter {
+        void write(int from, int to);
+    }
+
+    @FunctionalInterface
+    interface Rejector {
+        void reject(int index);
+    }
+}
@@ -0,0 +1,11 @@
+package ru.practicum.stats.server.service.ingest;
+
+/**
+ * How {@link HitRecorder} writes raw hits into {@code endpoint_hits}.
+ */
+public enum WriteMethod {
+    /** Batched multi-row INSERTs; cheapest for small batches. */
+    INSERT,
+    /** PostgreSQL COPY FROM STDIN; avoids per-row statement overhead on large batches. */
+    COPY
+}
@@ -0,0 +1,267 @@
+package ru.practicum.stats.server.service.journal;
+
+import lombok.extern.slf4j.Slf4j;
+import ru.practicum.stats.server.model.EndpointHit;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only journal of hits split into fixed-size memory-mapped segment files. Positions are global byte
+ * offsets: a segment file is named after the position of its first byte, and the next segment starts
+ * exactly {@code segmentSize} bytes later.
+ * <p>
+ * A record is {@code [int length][int crc32][payload]}. A length of {@code -1} (or too little room for a
+ * header) ends a segment, a length of {@code 0} marks the end of written data. Appends are serialised by the
+ * journal; a single reader may run concurrently and sees everything before {@link #writePosition()}.
+ * <p>
+ * Once {@link #append} returns, the records are in the page cache and survive a crash of the process.
+ * With {@code fsync} they are also forced to disk before returning, which survives a crash of the host.
+ */
+@Slf4j
+public class HitJournal {
+
+    private static final int HEADER = 8;
+    private static final int END_OF_SEGMENT = -1;
+    private static final String SUFFIX = ".seg";
+
+    private final Path directory;
+    private final int segmentSize;
+    private final boolean fsync;
+    private final NavigableMap<Long, MappedByteBuffer> segments = new ConcurrentSkipListMap<>();
+
+    // guarded by this
+    private long writeBase;
+    private MappedByteBuffer writeSegment;
+    private int writeOffset;
+
+    private volatile long writePosition;
+
+    /**
+     * Opens the journal, drops segments entirely before {@code checkpoint} and finds the end of the data
+     * after it. A torn record at the end, left by a crash in the middle of an append, is discarded.
+     */
+    public HitJournal(Path directory, int segmentSize, boolean fsync, long checkpoint) throws IOException {
+        this.directory = directory;
+        this.segmentSize = segmentSize;
+        this.fsync = fsync;
+        Files.createDirectories(directory);
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : files.filter(f -> f.getFileName().toString().endsWith(SUFFIX)).toList()) {
+                long base = baseOf(file);
+                if (base + segmentSize <= checkpoint) {
+                    Files.delete(file);
+                } else {
+                    segments.put(base, map(file));
+                }
+            }
+        }
+        long start = segments.isEmpty() ? checkpoint : Math.max(checkpoint, segments.firstKey());
+        long end = read(start, Long.MAX_VALUE, Integer.MAX_VALUE, null);
+        for (Long base : List.copyOf(segments.tailMap(end, false).keySet())) {
+            log.warn("Discarding journal segment {} after the end of valid data at {}", base, end);
+            SegmentUnmapper.unmap(segments.remove(base));
+            Files.delete(segmentFile(base));
+        }
+        Map.Entry<Long, MappedByteBuffer> last = segments.floorEntry(end);
+        if (last == null || end - last.getKey() >= segmentSize) {
+            writeBase = end;
+            writeSegment = createSegment(end);
+        } else {
+            writeBase = last.getKey();
+            writeSegment = last.getValue();
+        }
+        writeOffset = (int) (end - writeBase);
+        // clear whatever a torn append left behind, so a later crash cannot expose it again
+        for (int i = writeOffset; i < Math.min(writeOffset + HEADER, segmentSize); i++) {
+            writeSegment.put(i, (byte) 0);
+        }
+        writePosition = end;
+    }
+
+    public long writePosition() {
+        return writePosition;
+    }
+
+    public synchronized void append(List<EndpointHit> hits) {
+        int flushFrom = writeOffset;
+        for (EndpointHit hit : hits) {
+            byte[] payload = encode(hit);
+            int size = HEADER + payload.length;
+            if (size > segmentSize) {
+                throw new IllegalArgumentException("Hit of " + size + " bytes does not fit a journal segment");
+            }
+            if (writeOffset + size > segmentSize) {
+                if (writeOffset + Integer.BYTES <= segmentSize) {
+                    writeSegment.putInt(writeOffset, END_OF_SEGMENT);
+                }
+                if (fsync) {
+                    writeSegment.force(flushFrom, segmentSize - flushFrom);
+                }
+                roll();
+                flushFrom = 0;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            writeSegment.put(writeOffset + HEADER, payload);
+            writeSegment.putInt(writeOffset + Integer.BYTES, (int) crc.getValue());
+            // the length goes last so a record is never visible with a partial payload
+            writeSegment.putInt(writeOffset, payload.length);
+            writeOffset += size;
+        }
+        if (fsync && writeOffset > flushFrom) {
+            writeSegment.force(flushFrom, writeOffset - flushFrom);
+        }
+        writePosition = writeBase + writeOffset;
+    }
+
+    /**
+     * Reads up to {@code maxRecords} hits starting at {@code position} and returns the position after them.
+     */
+    public long read(long position, int maxRecords, List<EndpointHit> out) {
+        return read(position, writePosition, maxRecords, out);
+    }
+
+    /**
+     * Deletes the segments that lie entirely before {@code position}, except the one being written. Each one
+     * is dropped from the journal before it is unmapped and deleted, so only the reader, which has moved past
+     * them, may call this.
+     */
+    public void release(long position) {
+        List<Map.Entry<Long, MappedByteBuffer>> released = new ArrayList<>();
+        synchronized (this) {
+            for (Long base : List.copyOf(segments.headMap(position, false).keySet())) {
+                if (base + segmentSize <= position && base != writeBase) {
+                    released.add(Map.entry(base, segments.remove(base)));
+                }
+            }
+        }
+        for (Map.Entry<Long, MappedByteBuffer> segment : released) {
+            SegmentUnmapper.unmap(segment.getValue());
+            try {
+                Files.deleteIfExists(segmentFile(segment.getKey()));
+            } catch (IOException e) {
+                log.warn("Could not delete journal segment {}: {}", segment.getKey(), e.getMessage());
+            }
+        }
+    }
+
+    public synchronized void close() {
+        writeSegment.force();
+    }
+
+    private long read(long position, long limit, int maxRecords, List<EndpointHit> out) {
+        int count = 0;
+        while (position < limit && count < maxRecords) {
+            Map.Entry<Long, MappedByteBuffer> segment = segments.floorEntry(position);
+            if (segment == null || position - segment.getKey() >= segmentSize) {
+                break;
+            }
+            long base = segment.getKey();
+            ByteBuffer buffer = segment.getValue();
+            int offset = (int) (position - base);
+            int length = offset + HEADER <= segmentSize ? buffer.getInt(offset) : END_OF_SEGMENT;
+            if (length == END_OF_SEGMENT) {
+                position = base + segmentSize;
+                continue;
+            }
+            if (length <= 0 || offset + HEADER + length > segmentSize) {
+                break;
+            }
+            byte[] payload = new byte[length];
+            buffer.get(offset + HEADER, payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != buffer.getInt(offset + Integer.BYTES)) {
+                if (limit != Long.MAX_VALUE) {
+                    throw new IllegalStateException("Corrupted journal record at " + position);
+                }
+                break;
+            }
+            if (out != null) {
+                out.add(decode(payload));
+            }
+            position += HEADER + length;
+            count++;
+        }
+        return position;
+    }
+
+    private void roll() {
+        writeBase += segmentSize;
+        writeSegment = createSegment(writeBase);
+        writeOffset = 0;
+    }
+
+    private MappedByteBuffer createSegment(long base) {
+        try {
+            MappedByteBuffer segment = map(segmentFile(base));
+            segments.put(base, segment);
+            return segment;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create journal segment " + base, e);
+        }
+    }
+
+    private MappedByteBuffer map(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            return channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        }
+    }
+
+    private Path segmentFile(long base) {
+        return directory.resolve(String.format("%020d%s", base, SUFFIX));
+    }
+
+    private static long baseOf(Path file) {
+        String name = file.getFileName().toString();
+        return Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+    }
+
+    private static byte[] encode(EndpointHit hit) {
+        byte[] app = hit.getApp().getBytes(StandardCharsets.UTF_8);
+        byte[] uri = hit.getUri().getBytes(StandardCharsets.UTF_8);
+        byte[] ip = hit.getIp().getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buffer = ByteBuffer.allocate(3 * Integer.BYTES + app.length + uri.length + ip.length
+                + Long.BYTES + Integer.BYTES);
+        buffer.putInt(app.length).put(app);
+        buffer.putInt(uri.length).put(uri);
+        buffer.putInt(ip.length).put(ip);
+        buffer.putLong(hit.getTimestamp().toEpochSecond(ZoneOffset.UTC));
+        buffer.putInt(hit.getTimestamp().getNano());
+        return buffer.array();
+    }
+
+    private static EndpointHit decode(byte[] payload) {
+        ByteBuffer buffer = ByteBuffer.wrap(payload);
+        return EndpointHit.builder()
+                .app(getString(buffer))
+                .uri(getString(buffer))
+                .ip(getString(buffer))
+                .timestamp(LocalDateTime.ofEpochSecond(buffer.getLong(), buffer.getInt(), ZoneOffset.UTC))
+                .build();
+    }
+
+    private static String getString(ByteBuffer buffer) {
+        byte[] bytes = new byte[buffer.getInt()];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
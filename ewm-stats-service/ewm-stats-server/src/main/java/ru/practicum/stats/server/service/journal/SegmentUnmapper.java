@@ -0,0 +1,51 @@
+package ru.practicum.stats.server.service.journal;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+
+/**
+ * Unmaps a journal segment as soon as it is released rather than whenever the garbage collector gets to its
+ * buffer, so the address space and the disk blocks of a deleted segment are freed right away. Touching the
+ * buffer afterwards crashes the JVM, so callers must have dropped every reference to it first.
+ * <p>
+ * Uses {@code sun.misc.Unsafe.invokeCleaner}; where that is not available segments are left to the collector.
+ */
+@Slf4j
+final class SegmentUnmapper {
+
+    private static final MethodHandle INVOKE_CLEANER = findInvokeCleaner();
+
+    private SegmentUnmapper() {
+    }
+
+    static void unmap(MappedByteBuffer buffer) {
+        if (INVOKE_CLEANER == null) {
+            return;
+        }
+        try {
+            INVOKE_CLEANER.invokeExact((ByteBuffer) buffer);
+        } catch (Throwable e) {
+            log.warn("Could not unmap journal segment: {}", e.toString());
+        }
+    }
+
+    private static MethodHandle findInvokeCleaner() {
+        try {
+            Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+            Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+            theUnsafe.setAccessible(true);
+            return MethodHandles.lookup()
+                    .findVirtual(unsafeClass, "invokeCleaner", MethodType.methodType(void.class, ByteBuffer.class))
+                    .bindTo(theUnsafe.get(null));
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            log.warn("Journal segments will be unmapped by the garbage collector: {}", e.toString());
+            return null;
+        }
+    }
+}
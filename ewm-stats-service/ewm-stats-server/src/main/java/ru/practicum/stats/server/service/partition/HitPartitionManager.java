@@ -0,0 +1,164 @@
+package ru.practicum.stats.server.service.partition;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * Maintains the range partitions of {@code endpoint_hits}. Partitions are created for the current period and
+ * {@code precreate} periods ahead; rows that landed in the default partition (backdated hits, or hits that
+ * arrived before their partition existed) are moved into a partition of their own. With a non-zero
+ * {@code retention}, partitions that ended before the cutoff are dropped whole instead of deleted row by row.
+ * <p>
+ * Retention applies to every tier a query can read by time, so they all keep answering alike: rollups,
+ * sketches, bitmaps and compacted visitors before the cutoff are deleted with the raw hits. The all-time
+ * visitor counters have no time to trim by; {@link #droppedBefore()} tells the planner they no longer match.
+ */
+@Slf4j
+@Component
+public class HitPartitionManager {
+
+    private static final String DEFAULT_PARTITION = "endpoint_hits_default";
+    private static final DateTimeFormatter BOUND_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss");
+    private static final List<String> BUCKETED_TABLES = List.of(
+            "hit_rollup_minute", "hit_rollup_hour", "hit_rollup_day",
+            "hit_sketch_hour", "hit_sketch_day",
+            "hit_bitmap_hour", "hit_bitmap_day",
+            "hit_distinct_hour");
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+    private final PartitionInterval interval;
+    private final int precreate;
+    private final Duration retention;
+
+    private volatile LocalDateTime droppedBefore;
+
+    public HitPartitionManager(JdbcTemplate jdbcTemplate,
+                               TransactionTemplate transactionTemplate,
+                               @Value("${stats.partitions.interval:MONTH}") PartitionInterval interval,
+                               @Value("${stats.partitions.precreate:2}") int precreate,
+                               @Value("${stats.partitions.retention:0d}") Duration retention) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactionTemplate = transactionTemplate;
+        this.interval = interval;
+        this.precreate = precreate;
+        this.retention = retention;
+    }
+
+    @PostConstruct
+    @Scheduled(cron = "${stats.partitions.maintenance-cron:0 5 * * * *}")
+    public void maintain() {
+        droppedBefore = jdbcTemplate.queryForObject("SELECT dropped_before FROM hit_retention WHERE id = 1",
+                LocalDateTime.class);
+        LocalDateTime cutoff = retention.isZero() ? null : interval.floor(LocalDateTime.now().minus(retention));
+
+        Set<LocalDateTime> periods = new TreeSet<>(jdbcTemplate.queryForList(
+                "SELECT DISTINCT date_trunc('" + interval.sqlUnit() + "', timestamp) FROM " + DEFAULT_PARTITION,
+                LocalDateTime.class));
+        LocalDateTime period = interval.floor(LocalDateTime.now());
+        for (int i = 0; i <= precreate; i++) {
+            periods.add(period);
+            period = interval.next(period);
+        }
+        for (LocalDateTime start : periods) {
+            if (cutoff == null || interval.next(start).isAfter(cutoff)) {
+                createPartition(start);
+            }
+        }
+        if (cutoff != null) {
+            dropExpired(cutoff);
+        }
+    }
+
+    /**
+     * Time before which hits have been dropped, or {@code null} if retention has never dropped any.
+     */
+    public LocalDateTime droppedBefore() {
+        return droppedBefore;
+    }
+
+    private void createPartition(LocalDateTime from) {
+        String name = interval.partitionName(from);
+        if (jdbcTemplate.queryForObject("SELECT to_regclass(?) IS NOT NULL", Boolean.class, name)) {
+            return;
+        }
+        LocalDateTime to = interval.next(from);
+        try {
+            transactionTemplate.executeWithoutResult(status -> {
+                // keeps new rows for this range out of the default partition until the attach is done
+                jdbcTemplate.execute("LOCK TABLE " + DEFAULT_PARTITION + " IN ACCESS EXCLUSIVE MODE");
+                jdbcTemplate.execute("CREATE TABLE " + name + " (LIKE endpoint_hits INCLUDING DEFAULTS)");
+                int moved = jdbcTemplate.update("INSERT INTO " + name + " SELECT * FROM " + DEFAULT_PARTITION
+                        + " WHERE timestamp >= ? AND timestamp < ?", from, to);
+                jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp >= ? AND timestamp < ?",
+                        from, to);
+                jdbcTemplate.execute("ALTER TABLE endpoint_hits ATTACH PARTITION " + name + " FOR VALUES FROM ('"
+                        + from.format(BOUND_FORMAT) + "') TO ('" + to.format(BOUND_FORMAT) + "')");
+                log.info("Created partition {} ({} hits moved from default)", name, moved);
+            });
+        } catch (DataAccessException e) {
+            log.warn("Could not create partition {}: {}", name, e.getMessage());
+        }
+    }
+
+    /**
+     * Records the cutoff first, so the planner stops relying on the all-time counters before anything is gone.
+     */
+    private void dropExpired(LocalDateTime cutoff) {
+        LocalDateTime earliest = jdbcTemplate.queryForObject("SELECT LEAST("
+                + "(SELECT MIN(timestamp) FROM endpoint_hits), (SELECT MIN(bucket) FROM hit_rollup_day))",
+                LocalDateTime.class);
+        if (earliest != null && earliest.isBefore(cutoff)) {
+            jdbcTemplate.update("UPDATE hit_retention SET dropped_before = ? WHERE id = 1"
+                    + " AND (dropped_before IS NULL OR dropped_before < ?)", cutoff, cutoff);
+            if (droppedBefore == null || droppedBefore.isBefore(cutoff)) {
+                droppedBefore = cutoff;
+            }
+        }
+        List<String> partitions = jdbcTemplate.queryForList("""
+                SELECT c.relname FROM pg_inherits i
+                JOIN pg_class c ON c.oid = i.inhrelid
+                WHERE i.inhparent = 'endpoint_hits'::regclass
+                """, String.class);
+        for (String name : partitions) {
+            LocalDateTime start = PartitionInterval.periodOf(name);
+            if (start == null || PartitionInterval.ofName(name).next(start).isAfter(cutoff)) {
+                continue;
+            }
+            try {
+                jdbcTemplate.execute("DROP TABLE " + name);
+                log.info("Dropped expired partition {}", name);
+            } catch (DataAccessException e) {
+                log.warn("Could not drop partition {}: {}", name, e.getMessage());
+            }
+        }
+        int deleted = jdbcTemplate.update("DELETE FROM " + DEFAULT_PARTITION + " WHERE timestamp < ?", cutoff);
+        if (deleted > 0) {
+            log.info("Deleted {} expired hits from the default partition", deleted);
+        }
+        // the cutoff is a whole day or month, so no bucket straddles it
+        for (String table : BUCKETED_TABLES) {
+            try {
+                deleted = jdbcTemplate.update("DELETE FROM " + table + " WHERE bucket < ?", cutoff);
+                if (deleted > 0) {
+                    log.info("Deleted {} expired rows from {}", deleted, table);
+                }
+            } catch (DataAccessException e) {
+                log.warn("Could not delete expired rows from {}: {}", table, e.getMessage());
+            }
+        }
+    }
+}
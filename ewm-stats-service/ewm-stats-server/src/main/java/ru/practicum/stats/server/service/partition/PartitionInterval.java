@@ -0,0 +1,81 @@
+package ru.practicum.stats.server.service.partition;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+
+public enum PartitionInterval {
+    DAY("day", DateTimeFormatter.BASIC_ISO_DATE) {
+        @Override
+        public LocalDateTime floor(LocalDateTime time) {
+            return time.truncatedTo(ChronoUnit.DAYS);
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime periodStart) {
+            return periodStart.plusDays(1);
+        }
+    },
+    MONTH("month", DateTimeFormatter.ofPattern("yyyyMM")) {
+        @Override
+        public LocalDateTime floor(LocalDateTime time) {
+            return time.withDayOfMonth(1).truncatedTo(ChronoUnit.DAYS);
+        }
+
+        @Override
+        public LocalDateTime next(LocalDateTime periodStart) {
+            return periodStart.plusMonths(1);
+        }
+    };
+
+    private static final String PREFIX = "endpoint_hits_p";
+
+    private final String sqlUnit;
+    private final DateTimeFormatter suffixFormat;
+
+    PartitionInterval(String sqlUnit, DateTimeFormatter suffixFormat) {
+        this.sqlUnit = sqlUnit;
+        this.suffixFormat = suffixFormat;
+    }
+
+    public abstract LocalDateTime floor(LocalDateTime time);
+
+    public abstract LocalDateTime next(LocalDateTime periodStart);
+
+    /**
+     * Unit name for {@code date_trunc}.
+     */
+    public String sqlUnit() {
+        return sqlUnit;
+    }
+
+    public String partitionName(LocalDateTime periodStart) {
+        return PREFIX + periodStart.format(suffixFormat);
+    }
+
+    /**
+     * Start of the period a managed partition covers, or {@code null} for tables not named by this class.
+     */
+    public static LocalDateTime periodOf(String partitionName) {
+        if (!partitionName.startsWith(PREFIX)) {
+            return null;
+        }
+        String suffix = partitionName.substring(PREFIX.length());
+        if (!suffix.chars().allMatch(Character::isDigit)) {
+            return null;
+        }
+        if (suffix.length() == 8) {
+            return LocalDate.parse(suffix, DAY.suffixFormat).atStartOfDay();
+        }
+        if (suffix.length() == 6) {
+            return YearMonth.parse(suffix, MONTH.suffixFormat).atDay(1).atStartOfDay();
+        }
+        return null;
+    }
+
+    public static PartitionInterval ofName(String partitionName) {
+        return partitionName.length() == PREFIX.length() + 8 ? DAY : MONTH;
+    }
+}
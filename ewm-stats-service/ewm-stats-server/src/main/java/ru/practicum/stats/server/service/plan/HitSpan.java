@@ -0,0 +1,59 @@
+package ru.practicum.stats.server.service.plan;
+
+import jakarta.annotation.PostConstruct;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.EndpointHitRepository;
+import ru.practicum.stats.server.service.ingest.HitListener;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Earliest and latest stored hit, read once at startup and widened by every committed batch, so planning a
+ * query does not cost two round trips. Retention may leave the earliest hit too early, which only makes
+ * {@link StatsQueryPlanner#coversAllHits} more cautious.
+ */
+@Component
+@RequiredArgsConstructor
+public class HitSpan implements HitListener {
+
+    private final EndpointHitRepository hitRepository;
+
+    private volatile LocalDateTime earliest;
+    private volatile LocalDateTime latest;
+
+    @PostConstruct
+    void init() {
+        earliest = hitRepository.findEarliestTimestamp();
+        latest = hitRepository.findLatestTimestamp();
+    }
+
+    /**
+     * Earliest stored hit, or {@code null} if there are none.
+     */
+    public LocalDateTime earliest() {
+        return earliest;
+    }
+
+    /**
+     * Latest stored hit, or {@code null} if there are none.
+     */
+    public LocalDateTime latest() {
+        return latest;
+    }
+
+    @Override
+    public synchronized void onCommitted(List<EndpointHit> hits) {
+        for (EndpointHit hit : hits) {
+            LocalDateTime timestamp = hit.getTimestamp();
+            if (earliest == null || timestamp.isBefore(earliest)) {
+                earliest = timestamp;
+            }
+            if (latest == null || timestamp.isAfter(latest)) {
+                latest = timestamp;
+            }
+        }
+    }
+}
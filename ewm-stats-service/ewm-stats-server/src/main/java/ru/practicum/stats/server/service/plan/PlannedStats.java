@@ -0,0 +1,12 @@
+package ru.practicum.stats.server.service.plan;
+
+import ru.practicum.stats.dto.ViewStatsDto;
+
+import java.util.List;
+
+/**
+ * Stats together with a description of how they were obtained; {@code plan} is {@code "CACHED"} when they
+ * came from the query cache.
+ */
+public record PlannedStats(List<ViewStatsDto> stats, String plan) {
+}
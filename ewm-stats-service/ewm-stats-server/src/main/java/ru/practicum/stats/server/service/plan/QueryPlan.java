@@ -0,0 +1,42 @@
+package ru.practicum.stats.server.service.plan;
+
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Locale;
+import java.util.StringJoiner;
+
+/**
+ * Sources chosen for one stats query over {@code [start, end]}. {@code segments} are read from the database;
+ * for {@link QueryStrategy#TOTAL} the part from {@code recentFrom} to {@code end} comes from the recent-hits
+ * counters instead, unless {@code recentFrom} is null. {@code cost} is the planner's estimate in rows read.
+ */
+public record QueryPlan(QueryStrategy strategy, LocalDateTime start, LocalDateTime end, List<RangeSegment> segments,
+                        LocalDateTime recentFrom, long cost) {
+
+    static QueryPlan of(QueryStrategy strategy, LocalDateTime start, LocalDateTime end, long cost) {
+        return new QueryPlan(strategy, start, end, List.of(), null, cost);
+    }
+
+    /**
+     * One-line summary for the plan debug header, e.g.
+     * {@code TOTAL cost=74 hour[2024-01-01T10:00,2024-01-01T12:00) raw[2024-01-01T12:00,2024-01-01T12:13:20]}.
+     */
+    public String describe() {
+        StringJoiner description = new StringJoiner(" ");
+        description.add(strategy.name());
+        description.add("cost=" + cost);
+        for (RangeSegment segment : segments) {
+            String source = segment.isRaw() ? "raw" : segment.granularity().name().toLowerCase(Locale.ROOT);
+            description.add(source + "[" + segment.from() + "," + segment.to() + (segment.closed() ? "]" : ")"));
+        }
+        if (recentFrom != null) {
+            description.add("recent[" + recentFrom + "," + end + "]");
+        }
+        if (segments.isEmpty() && recentFrom == null) {
+            description.add("[" + start + "," + end + "]");
+        }
+        return description.toString();
+    }
+}
@@ -0,0 +1,27 @@
+package ru.practicum.stats.server.service.plan;
+
+/**
+ * How a {@link QueryPlan} is answered.
+ */
+public enum QueryStrategy {
+    /**
+     * Total hits summed over rollup and raw segments, plus the recent-hits counters for the tail.
+     */
+    TOTAL,
+    /**
+     * Unique visitors of all history, from the incrementally maintained counters.
+     */
+    ALL_TIME_UNIQUE,
+    /**
+     * Exact unique visitors, from the union of visitor bitmaps and raw edges.
+     */
+    BITMAP_UNIQUE,
+    /**
+     * Estimated unique visitors, from the union of HyperLogLog sketches and raw edges.
+     */
+    SKETCH_UNIQUE,
+    /**
+     * Exact unique visitors, from {@code COUNT(DISTINCT ip)} over raw hits.
+     */
+    DISTINCT_UNIQUE
+}
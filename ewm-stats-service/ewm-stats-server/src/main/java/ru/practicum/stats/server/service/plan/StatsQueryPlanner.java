@@ -0,0 +1,187 @@
+package ru.practicum.stats.server.service.plan;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.service.bitmap.ExactUniqueStats;
+import ru.practicum.stats.server.service.compaction.HitCompactor;
+import ru.practicum.stats.server.service.partition.HitPartitionManager;
+import ru.practicum.stats.server.service.recent.RecentHitCounters;
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+import ru.practicum.stats.server.service.rollup.RollupRanges;
+import ru.practicum.stats.server.service.sketch.ApproximateUniqueStats;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Picks the cheapest exact way to answer a {@code /stats} query from the tiers that can answer it: the
+ * recent-hits counters, rollups, visitor bitmaps, sketches and raw hits.
+ * <p>
+ * Costs are estimated rows read per series: a raw segment costs {@code stats.planner.raw-hits-per-minute}
+ * for every minute it spans, a rollup bucket one row, a bitmap or sketch bucket
+ * {@code stats.planner.bitmap-bucket-cost}, and the in-memory counters nothing.
+ * <p>
+ * A plan answers the whole query with one strategy. Totals already mix tiers segment by segment, but
+ * distinct visitors from different tiers cannot be added up, so a unique query is not routed per segment.
+ */
+@Component
+public class StatsQueryPlanner {
+
+    private static final long ALL_TIME_COST = 1;
+
+    private final HitSpan hitSpan;
+    private final RecentHitCounters recentHitCounters;
+    private final ExactUniqueStats exactUniqueStats;
+    private final ApproximateUniqueStats approximateUniqueStats;
+    private final HitCompactor compactor;
+    private final HitPartitionManager partitionManager;
+    private final boolean bitmapsEnabled;
+    private final long rawHitsPerMinute;
+    private final long bitmapBucketCost;
+
+    public StatsQueryPlanner(HitSpan hitSpan,
+                             RecentHitCounters recentHitCounters,
+                             ExactUniqueStats exactUniqueStats,
+                             ApproximateUniqueStats approximateUniqueStats,
+                             HitCompactor compactor,
+                             HitPartitionManager partitionManager,
+                             @Value("${stats.bitmaps.enabled:false}") boolean bitmapsEnabled,
+                             @Value("${stats.planner.raw-hits-per-minute:60}") long rawHitsPerMinute,
+                             @Value("${stats.planner.bitmap-bucket-cost:8}") long bitmapBucketCost) {
+        this.hitSpan = hitSpan;
+        this.recentHitCounters = recentHitCounters;
+        this.exactUniqueStats = exactUniqueStats;
+        this.approximateUniqueStats = approximateUniqueStats;
+        this.compactor = compactor;
+        this.partitionManager = partitionManager;
+        this.bitmapsEnabled = bitmapsEnabled;
+        this.rawHitsPerMinute = rawHitsPerMinute;
+        this.bitmapBucketCost = bitmapBucketCost;
+    }
+
+    public QueryPlan plan(LocalDateTime start, LocalDateTime end, boolean unique, boolean approximate) {
+        List<QueryPlan> candidates = new ArrayList<>();
+        if (!unique) {
+            List<RangeSegment> segments = totalRanges(start, end, RollupGranularity.DAY);
+            candidates.add(new QueryPlan(QueryStrategy.TOTAL, start, end, segments, null, cost(segments, 1)));
+            LocalDateTime recentFrom = recentHitCounters.coverageStart(start, end);
+            if (recentFrom != null) {
+                List<RangeSegment> cold = start.isBefore(recentFrom)
+                        ? RollupRanges.split(compactedStart(start), recentFrom, false, RollupGranularity.MINUTE)
+                        : List.of();
+                candidates.add(new QueryPlan(QueryStrategy.TOTAL, start, end, cold, recentFrom, cost(cold, 1)));
+            }
+        } else if (coversAllHits(start, end)) {
+            candidates.add(QueryPlan.of(QueryStrategy.ALL_TIME_UNIQUE, start, end, ALL_TIME_COST));
+        } else if (approximate) {
+            List<RangeSegment> segments = approximateUniqueStats.plan(start, end);
+            candidates.add(new QueryPlan(QueryStrategy.SKETCH_UNIQUE, start, end, segments, null,
+                    cost(segments, bitmapBucketCost)));
+        } else {
+            candidates.add(QueryPlan.of(QueryStrategy.DISTINCT_UNIQUE, start, end,
+                    cost(RangeSegment.raw(start, end, true), 1)));
+            if (bitmapsEnabled) {
+                List<RangeSegment> segments = exactUniqueStats.plan(start, end);
+                candidates.add(new QueryPlan(QueryStrategy.BITMAP_UNIQUE, start, end, segments, null,
+                        cost(segments, bitmapBucketCost)));
+            }
+        }
+        return candidates.stream().min(Comparator.comparingLong(QueryPlan::cost)).orElseThrow();
+    }
+
+    /**
+     * Rollup segments for a total over {@code [start, end]}. Raw hits before the compaction cutoff may be
+     * gone, so edges there come from the minute rollups: exact for ranges {@link #splitsCompactedMinute}
+     * accepts, rounded out to whole minutes otherwise.
+     */
+    public List<RangeSegment> totalRanges(LocalDateTime start, LocalDateTime end, RollupGranularity coarsest) {
+        LocalDateTime compacted = compactor.compactedBefore();
+        if (compacted != null && end.isBefore(compacted)) {
+            return RollupRanges.split(compactedStart(start), RollupGranularity.MINUTE.floor(end).plusMinutes(1),
+                    false, RollupGranularity.MINUTE, coarsest);
+        }
+        return RollupRanges.split(compactedStart(start), end, true, RollupGranularity.MINUTE, coarsest);
+    }
+
+    /**
+     * A window that contains every stored hit has the same unique counts as all of history,
+     * which the incrementally maintained counters answer without scanning. Once retention has dropped
+     * hits, the counters still include their visitors and no longer match any window.
+     */
+    public boolean coversAllHits(LocalDateTime start, LocalDateTime end) {
+        if (partitionManager.droppedBefore() != null) {
+            return false;
+        }
+        LocalDateTime earliest = hitSpan.earliest();
+        if (earliest == null) {
+            return true;
+        }
+        return !start.isAfter(earliest) && !end.isBefore(hitSpan.latest());
+    }
+
+    /**
+     * Whether {@code [start, end]} cuts through an hour that compaction may have reduced to its distinct
+     * visitors. Such an hour can only be counted whole, so no unique count over the range would be exact.
+     * An end on the hour, or one second before it, does not cut.
+     */
+    public boolean splitsCompactedHour(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime compacted = compactor.compactedBefore();
+        if (compacted == null) {
+            return false;
+        }
+        return splits(start, compacted) || (splits(end, compacted) && splits(end.plusSeconds(1), compacted));
+    }
+
+    /**
+     * Whether {@code [start, end]} cuts through a minute before the compaction cutoff, whose raw hits may be
+     * gone. Only whole minutes of such a range can be totalled, so no total over it would be exact. A start on
+     * the minute and an end one second before the next minute do not cut.
+     */
+    public boolean splitsCompactedMinute(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime compacted = compactor.compactedBefore();
+        if (compacted == null) {
+            return false;
+        }
+        LocalDateTime afterEnd = end.plusSeconds(1);
+        return (start.isBefore(compacted) && !RollupGranularity.MINUTE.floor(start).equals(start))
+                || (end.isBefore(compacted) && !RollupGranularity.MINUTE.floor(afterEnd).equals(afterEnd));
+    }
+
+    /**
+     * Whether {@code [start, ...]} reaches hours whose visitors compaction may have stripped of their minute.
+     */
+    public boolean reachesCompactedHours(LocalDateTime start) {
+        LocalDateTime compacted = compactor.compactedBefore();
+        return compacted != null && start.isBefore(compacted);
+    }
+
+    private static boolean splits(LocalDateTime time, LocalDateTime compacted) {
+        LocalDateTime hour = RollupGranularity.HOUR.floor(time);
+        return hour.isBefore(compacted) && !hour.equals(time);
+    }
+
+    private LocalDateTime compactedStart(LocalDateTime start) {
+        LocalDateTime compacted = compactor.compactedBefore();
+        return compacted != null && start.isBefore(compacted) ? RollupGranularity.MINUTE.floor(start) : start;
+    }
+
+    private long cost(List<RangeSegment> segments, long bucketCost) {
+        long cost = 0;
+        for (RangeSegment segment : segments) {
+            cost += cost(segment, bucketCost);
+        }
+        return cost;
+    }
+
+    private long cost(RangeSegment segment, long bucketCost) {
+        if (segment.isRaw()) {
+            long minutes = Duration.between(segment.from(), segment.to()).plusSeconds(59).toMinutes();
+            return Math.max(1, minutes) * rawHitsPerMinute;
+        }
+        return segment.granularity().bucketsBetween(segment.from(), segment.to().minusNanos(1)) * bucketCost;
+    }
+}
@@ -0,0 +1,183 @@
+package ru.practicum.stats.server.service.recent;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.SeriesKey;
+import ru.practicum.stats.server.repository.EndpointHitRepository;
+import ru.practicum.stats.server.service.ingest.HitListener;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Hot tier for total hit counts: one slot per second for the last {@code stats.recent.window}, each holding a
+ * striped {@link LongAdder} per (app, uri). Slots live in a ring and are recycled with a CAS when their second
+ * falls out of the window, so neither writers nor readers take locks.
+ * <p>
+ * The counters are loaded from the database at startup and then follow committed hits, which makes them
+ * exact for the seconds they cover. Hits timestamped further ahead than the ring can hold are remembered so
+ * that queries touching those seconds go to the database. The counters only see hits written by this instance.
+ */
+@Slf4j
+@Component
+public class RecentHitCounters implements HitListener {
+
+    private static final long FUTURE_MARGIN_SECONDS = 60;
+
+    private final EndpointHitRepository hitRepository;
+    private final boolean enabled;
+    private final long windowSeconds;
+    private final AtomicReferenceArray<Slot> ring;
+    private final NavigableSet<Long> skippedSeconds = new ConcurrentSkipListSet<>();
+    private volatile long coveredFrom = Long.MAX_VALUE;
+
+    public RecentHitCounters(EndpointHitRepository hitRepository,
+                             @Value("${stats.recent.enabled:true}") boolean enabled,
+                             @Value("${stats.recent.window:10m}") Duration window) {
+        this.hitRepository = hitRepository;
+        this.enabled = enabled;
+        this.windowSeconds = window.toSeconds();
+        this.ring = new AtomicReferenceArray<>((int) (windowSeconds + FUTURE_MARGIN_SECONDS));
+    }
+
+    @PostConstruct
+    void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        long from = nowSecond() - windowSeconds + 1;
+        hitRepository.forEachSince(toTime(from), rs -> add(rs.getString("app"), rs.getString("uri"),
+                rs.getObject("timestamp", LocalDateTime.class), rs.getLong("hits")));
+        coveredFrom = from;
+        log.info("Recent hit counters cover hits from {}", toTime(from));
+    }
+
+    @Override
+    public void onCommitted(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            add(hit.getApp(), hit.getUri(), hit.getTimestamp(), 1);
+        }
+        long oldest = nowSecond() - windowSeconds;
+        skippedSeconds.headSet(oldest).clear();
+    }
+
+    /**
+     * Start of the part of {@code [start, end]} these counters can answer exactly, or {@code null} if they
+     * cannot answer the end of the range. Everything before the returned time must come from the database.
+     */
+    public LocalDateTime coverageStart(LocalDateTime start, LocalDateTime end) {
+        if (!enabled) {
+            return null;
+        }
+        long now = nowSecond();
+        long from = Math.max(toSecond(start), Math.max(coveredFrom, now - windowSeconds + 1));
+        long to = toSecond(end);
+        if (to < from || to > now + FUTURE_MARGIN_SECONDS) {
+            return null;
+        }
+        Long skipped = skippedSeconds.ceiling(from);
+        if (skipped != null && skipped <= to) {
+            return null;
+        }
+        return toTime(from);
+    }
+
+    /**
+     * Totals for the inclusive range, which must lie within {@link #coverageStart}.
+     */
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        Map<SeriesKey, Long> totals = new HashMap<>();
+        for (long second = toSecond(start); second <= toSecond(end); second++) {
+            Slot slot = ring.get(index(second));
+            if (slot == null || slot.second != second) {
+                continue;
+            }
+            slot.counts.forEach((key, adder) -> {
+                if (uris == null || uris.isEmpty() || uris.contains(key.uri())) {
+                    totals.merge(key, adder.sum(), Long::sum);
+                }
+            });
+        }
+        List<ViewStatsDto> result = new ArrayList<>(totals.size());
+        totals.forEach((key, hits) -> result.add(new ViewStatsDto(key.app(), key.uri(), hits)));
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result;
+    }
+
+    private void add(String app, String uri, LocalDateTime timestamp, long hits) {
+        long second = toSecond(timestamp);
+        long now = nowSecond();
+        if (second <= now - windowSeconds) {
+            return;
+        }
+        if (second > now + FUTURE_MARGIN_SECONDS) {
+            skippedSeconds.add(second);
+            return;
+        }
+        Slot slot = slotFor(second);
+        if (slot != null) {
+            slot.counts.computeIfAbsent(new SeriesKey(app, uri), k -> new LongAdder()).add(hits);
+        }
+    }
+
+    private Slot slotFor(long second) {
+        int index = index(second);
+        while (true) {
+            Slot slot = ring.get(index);
+            if (slot != null && slot.second == second) {
+                return slot;
+            }
+            if (slot != null && slot.second > second) {
+                // the ring has already moved past this second
+                return null;
+            }
+            Slot fresh = new Slot(second);
+            if (ring.compareAndSet(index, slot, fresh)) {
+                return fresh;
+            }
+        }
+    }
+
+    private int index(long second) {
+        return (int) Math.floorMod(second, (long) ring.length());
+    }
+
+    private static long nowSecond() {
+        return toSecond(LocalDateTime.now());
+    }
+
+    private static long toSecond(LocalDateTime time) {
+        return time.toEpochSecond(ZoneOffset.UTC);
+    }
+
+    private static LocalDateTime toTime(long second) {
+        return LocalDateTime.ofEpochSecond(second, 0, ZoneOffset.UTC);
+    }
+
+    private static final class Slot {
+        private final long second;
+        private final Map<SeriesKey, LongAdder> counts = new ConcurrentHashMap<>();
+
+        private Slot(long second) {
+            this.second = second;
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package ru.practicum.stats.server.service.rollup;
+
+import ru.practicum.stats.server.model.RollupGranularity;
+
+import java.time.LocalDateTime;
+
+/**
+ * Part of a stats range answered from one source: raw hits when {@code granularity} is null,
+ * otherwise a rollup table. Segments are half-open unless {@code closed} is set.
+ */
+public record RangeSegment(RollupGranularity granularity, LocalDateTime from, LocalDateTime to, boolean closed) {
+
+    public static RangeSegment raw(LocalDateTime from, LocalDateTime to, boolean closed) {
+        return new RangeSegment(null, from, to, closed);
+    }
+
+    public static RangeSegment rollup(RollupGranularity granularity, LocalDateTime from, LocalDateTime to) {
+        return new RangeSegment(granularity, from, to, false);
+    }
+
+    public boolean isRaw() {
+        return granularity == null;
+    }
+}
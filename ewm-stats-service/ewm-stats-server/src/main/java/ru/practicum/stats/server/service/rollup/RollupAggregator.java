@@ -0,0 +1,32 @@
+package ru.practicum.stats.server.service.rollup;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.BucketKey;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.repository.HitRollupRepository;
+import ru.practicum.stats.server.service.ingest.HitAggregator;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+@Component
+@RequiredArgsConstructor
+public class RollupAggregator implements HitAggregator {
+
+    private final HitRollupRepository rollupRepository;
+
+    @Override
+    public void apply(List<EndpointHit> hits) {
+        for (RollupGranularity granularity : RollupGranularity.values()) {
+            // sorted keys keep the row lock order stable across concurrent batches
+            Map<BucketKey, Long> counts = new TreeMap<>();
+            for (EndpointHit hit : hits) {
+                counts.merge(BucketKey.of(hit, granularity), 1L, Long::sum);
+            }
+            rollupRepository.increment(granularity, counts);
+        }
+    }
+}
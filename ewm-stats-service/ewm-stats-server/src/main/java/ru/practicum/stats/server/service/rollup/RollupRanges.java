@@ -0,0 +1,78 @@
+package ru.practicum.stats.server.service.rollup;
+
+import ru.practicum.stats.server.model.RollupGranularity;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+
+public final class RollupRanges {
+
+    private static final RollupGranularity[] LEVELS = RollupGranularity.values();
+
+    private RollupRanges() {
+    }
+
+    public static List<RangeSegment> split(LocalDateTime start, LocalDateTime end) {
+        return split(start, end, true, RollupGranularity.MINUTE);
+    }
+
+    public static List<RangeSegment> split(LocalDateTime start, LocalDateTime end, RollupGranularity finest) {
+        return split(start, end, true, finest);
+    }
+
+    public static List<RangeSegment> split(LocalDateTime start, LocalDateTime end, boolean closed,
+                                           RollupGranularity finest) {
+        return split(start, end, closed, finest, LEVELS[LEVELS.length - 1]);
+    }
+
+    /**
+     * Splits the range from {@code start} to {@code end} (inclusive when {@code closed}) into the coarsest
+     * buckets between {@code finest} and {@code coarsest} that fit inside it, and leaves raw segments only for
+     * the edges finer than {@code finest}.
+     */
+    public static List<RangeSegment> split(LocalDateTime start, LocalDateTime end, boolean closed,
+                                           RollupGranularity finest, RollupGranularity coarsest) {
+        List<RangeSegment> segments = new ArrayList<>();
+        LocalDateTime from = finest.ceil(start);
+        LocalDateTime to = finest.floor(end);
+        if (!from.isBefore(to)) {
+            if (closed || start.isBefore(end)) {
+                segments.add(RangeSegment.raw(start, end, closed));
+            }
+            return segments;
+        }
+        if (start.isBefore(from)) {
+            segments.add(RangeSegment.raw(start, from, false));
+        }
+        for (int level = finest.ordinal(); level <= coarsest.ordinal(); level++) {
+            RollupGranularity granularity = LEVELS[level];
+            if (level < coarsest.ordinal()) {
+                RollupGranularity coarser = LEVELS[level + 1];
+                LocalDateTime innerFrom = coarser.ceil(from);
+                LocalDateTime innerTo = coarser.floor(to);
+                if (innerFrom.isBefore(innerTo)) {
+                    addRollup(segments, granularity, from, innerFrom);
+                    addRollup(segments, granularity, innerTo, to);
+                    from = innerFrom;
+                    to = innerTo;
+                    continue;
+                }
+            }
+            addRollup(segments, granularity, from, to);
+            break;
+        }
+        LocalDateTime edge = finest.floor(end);
+        if (closed || edge.isBefore(end)) {
+            segments.add(RangeSegment.raw(edge, end, closed));
+        }
+        return segments;
+    }
+
+    private static void addRollup(List<RangeSegment> segments, RollupGranularity granularity,
+                                  LocalDateTime from, LocalDateTime to) {
+        if (from.isBefore(to)) {
+            segments.add(RangeSegment.rollup(granularity, from, to));
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package ru.practicum.stats.server.service.sketch;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.model.SeriesKey;
+import ru.practicum.stats.server.repository.HitSketchRepository;
+import ru.practicum.stats.server.service.dictionary.IpAddresses;
+import ru.practicum.stats.server.service.rollup.RangeSegment;
+import ru.practicum.stats.server.service.rollup.RollupRanges;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Unique visitor counts estimated by merging the stored sketches of every bucket in the range. Parts of the
+ * range not covered by whole buckets, or older than the sketches themselves, are read from raw hits and
+ * added to the same sketches; HyperLogLog union is idempotent, so overlap between the two cannot double count.
+ */
+@Component
+@RequiredArgsConstructor
+public class ApproximateUniqueStats {
+
+    private final HitSketchRepository sketchRepository;
+
+    public List<ViewStatsDto> getStats(LocalDateTime start, LocalDateTime end, List<String> uris) {
+        return getStats(plan(start, end), uris);
+    }
+
+    /**
+     * Counts over segments already laid out by {@link #plan}.
+     */
+    public List<ViewStatsDto> getStats(List<RangeSegment> segments, List<String> uris) {
+        Map<SeriesKey, HyperLogLog> sketches = new HashMap<>();
+        for (RangeSegment segment : segments) {
+            if (segment.isRaw()) {
+                sketchRepository.forEachVisitor(segment, uris, rs -> sketches
+                        .computeIfAbsent(new SeriesKey(rs.getString("app"), rs.getString("uri")), k -> new HyperLogLog())
+                        .add(IpAddresses.toBytes(rs.getString("ip"))));
+            } else {
+                sketchRepository.forEachSketch(segment, uris, rs -> sketches
+                        .computeIfAbsent(new SeriesKey(rs.getString("app"), rs.getString("uri")), k -> new HyperLogLog())
+                        .merge(HyperLogLog.fromBytes(rs.getBytes("sketch"))));
+            }
+        }
+        List<ViewStatsDto> result = new ArrayList<>(sketches.size());
+        sketches.forEach((key, sketch) -> result.add(new ViewStatsDto(key.app(), key.uri(), sketch.cardinality())));
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result;
+    }
+
+    /**
+     * Whole buckets from the coverage start on, raw segments for the edges and for anything older.
+     */
+    public List<RangeSegment> plan(LocalDateTime start, LocalDateTime end) {
+        LocalDateTime coverage = sketchRepository.getCoverageStart();
+        if (!start.isBefore(coverage)) {
+            return RollupRanges.split(start, end, RollupGranularity.HOUR);
+        }
+        if (end.isBefore(coverage)) {
+            return List.of(RangeSegment.raw(start, end, true));
+        }
+        List<RangeSegment> segments = new ArrayList<>();
+        segments.add(RangeSegment.raw(start, coverage, false));
+        segments.addAll(RollupRanges.split(coverage, end, RollupGranularity.HOUR));
+        return segments;
+    }
+}
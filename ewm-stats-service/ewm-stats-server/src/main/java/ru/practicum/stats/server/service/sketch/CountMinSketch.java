@@ -0,0 +1,57 @@
+package ru.practicum.stats.server.service.sketch;
+
+/**
+ * Count-Min sketch over 64-bit hashes: {@code depth} rows of {@code width} counters, one counter per row
+ * incremented for every add. An estimate is the smallest of those counters, so it never undercounts and
+ * overcounts by at most {@code e/width} of the total with probability {@code 1 - e^-depth}.
+ * Not thread-safe.
+ */
+public class CountMinSketch {
+
+    private final int width;
+    private final long[][] counters;
+    private long total;
+
+    public CountMinSketch(int width, int depth) {
+        if (width < 1 || depth < 1) {
+            throw new IllegalArgumentException("width and depth must be positive");
+        }
+        this.width = width;
+        this.counters = new long[depth][width];
+    }
+
+    /**
+     * Adds {@code count} to the item and returns its new estimate.
+     */
+    public long add(long hash, long count) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            int index = index(hash, row);
+            counters[row][index] += count;
+            estimate = Math.min(estimate, counters[row][index]);
+        }
+        total += count;
+        return estimate;
+    }
+
+    public long estimate(long hash) {
+        long estimate = Long.MAX_VALUE;
+        for (int row = 0; row < counters.length; row++) {
+            estimate = Math.min(estimate, counters[row][index(hash, row)]);
+        }
+        return estimate;
+    }
+
+    public long total() {
+        return total;
+    }
+
+    /**
+     * Kirsch-Mitzenmacher double hashing: row {@code i} uses {@code h1 + i * h2}.
+     */
+    private int index(long hash, int row) {
+        int h1 = (int) hash;
+        int h2 = (int) (hash >>> 32);
+        return Math.floorMod(h1 + row * h2, width);
+    }
+}
@@ -0,0 +1,74 @@
+package ru.practicum.stats.server.service.sketch;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.BucketKey;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.repository.HitSketchRepository;
+import ru.practicum.stats.server.service.dictionary.IpAddresses;
+import ru.practicum.stats.server.service.ingest.HitAggregator;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Folds visitor IPs into the hourly and daily HyperLogLog sketches used by approximate unique queries.
+ * Each batch locks and reads all its rows in one statement and writes them back in one JDBC batch.
+ * <p>
+ * With {@code stats.sketches.enabled} off nothing is written and approximate queries are answered from raw
+ * hits; turning it back on restarts sketch coverage from the next full hour.
+ */
+@Component
+public class SketchAggregator implements HitAggregator {
+
+    private static final List<RollupGranularity> GRANULARITIES = List.of(RollupGranularity.HOUR, RollupGranularity.DAY);
+
+    private final HitSketchRepository sketchRepository;
+    private final boolean enabled;
+
+    public SketchAggregator(HitSketchRepository sketchRepository,
+                            @Value("${stats.sketches.enabled:false}") boolean enabled) {
+        this.sketchRepository = sketchRepository;
+        this.enabled = enabled;
+    }
+
+    @PostConstruct
+    void initCoverage() {
+        if (enabled) {
+            sketchRepository.resumeCoverage(RollupGranularity.HOUR.floor(LocalDateTime.now()).plusHours(1));
+        } else {
+            sketchRepository.suspendCoverage();
+        }
+    }
+
+    @Override
+    public void apply(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (RollupGranularity granularity : GRANULARITIES) {
+            Map<BucketKey, HyperLogLog> batch = new TreeMap<>();
+            for (EndpointHit hit : hits) {
+                batch.computeIfAbsent(BucketKey.of(hit, granularity), k -> new HyperLogLog())
+                        .add(IpAddresses.toBytes(hit.getIp()));
+            }
+            if (batch.isEmpty()) {
+                continue;
+            }
+            List<BucketKey> keys = List.copyOf(batch.keySet());
+            sketchRepository.createMissing(granularity, keys);
+            Map<BucketKey, byte[]> stored = sketchRepository.lockAll(granularity, keys);
+            Map<BucketKey, byte[]> merged = new TreeMap<>();
+            for (Map.Entry<BucketKey, HyperLogLog> entry : batch.entrySet()) {
+                HyperLogLog sketch = HyperLogLog.fromBytes(stored.get(entry.getKey()));
+                sketch.merge(entry.getValue());
+                merged.put(entry.getKey(), sketch.toBytes());
+            }
+            sketchRepository.update(granularity, merged);
+        }
+    }
+}
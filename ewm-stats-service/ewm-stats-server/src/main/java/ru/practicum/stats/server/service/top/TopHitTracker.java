@@ -0,0 +1,177 @@
+package ru.practicum.stats.server.service.top;
+
+import jakarta.annotation.PostConstruct;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.dto.ViewStatsDto;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.model.RollupGranularity;
+import ru.practicum.stats.server.model.SeriesKey;
+import ru.practicum.stats.server.repository.HitRollupRepository;
+import ru.practicum.stats.server.service.ingest.HitListener;
+import ru.practicum.stats.server.service.sketch.CountMinSketch;
+import ru.practicum.stats.server.service.sketch.HyperLogLog;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Heavy-hitter tracking for {@code /stats/top}. Every hour gets a Count-Min sketch of hits per (app, uri) and a
+ * small set of candidates holding the largest estimates seen in that hour. The top of a window is taken from
+ * the union of candidates of the hours it touches, ranked by their summed sketch estimates, so it never
+ * scans hits. Counts are estimates and windows are widened to whole hours.
+ * <p>
+ * Sketches are rebuilt from {@code hit_rollup_hour} at startup and follow committed hits afterwards.
+ */
+@Slf4j
+@Component
+public class TopHitTracker implements HitListener {
+
+    private static final RollupGranularity BUCKET = RollupGranularity.HOUR;
+
+    private final HitRollupRepository rollupRepository;
+    private final boolean enabled;
+    private final Duration retention;
+    private final int width;
+    private final int depth;
+    private final int candidates;
+    private final NavigableMap<LocalDateTime, Bucket> buckets = new ConcurrentSkipListMap<>();
+    private volatile LocalDateTime coveredFrom = LocalDateTime.MAX;
+
+    public TopHitTracker(HitRollupRepository rollupRepository,
+                         @Value("${stats.top.enabled:true}") boolean enabled,
+                         @Value("${stats.top.retention:48h}") Duration retention,
+                         @Value("${stats.top.sketch-width:4096}") int width,
+                         @Value("${stats.top.sketch-depth:4}") int depth,
+                         @Value("${stats.top.candidates:100}") int candidates) {
+        this.rollupRepository = rollupRepository;
+        this.enabled = enabled;
+        this.retention = retention;
+        this.width = width;
+        this.depth = depth;
+        this.candidates = candidates;
+    }
+
+    @PostConstruct
+    void warmUp() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime from = oldestBucket();
+        rollupRepository.forEachBucket(BUCKET, from, rs -> add(new SeriesKey(rs.getString("app"), rs.getString("uri")),
+                rs.getObject("bucket", LocalDateTime.class), rs.getLong("hits")));
+        coveredFrom = from;
+        log.info("Top hit sketches cover hits from {}", from);
+    }
+
+    @Override
+    public void onCommitted(List<EndpointHit> hits) {
+        if (!enabled) {
+            return;
+        }
+        for (EndpointHit hit : hits) {
+            add(new SeriesKey(hit.getApp(), hit.getUri()), hit.getTimestamp(), 1);
+        }
+        buckets.headMap(oldestBucket()).clear();
+    }
+
+    public int maxLimit() {
+        return candidates;
+    }
+
+    /**
+     * Up to {@code limit} series with the most hits between the hours of {@code start} and {@code end},
+     * or {@code null} when the window reaches back past the retained sketches.
+     */
+    public List<ViewStatsDto> getTop(LocalDateTime start, LocalDateTime end, int limit) {
+        LocalDateTime from = BUCKET.floor(start);
+        if (!enabled || from.isBefore(coveredFrom) || from.isBefore(oldestBucket())) {
+            return null;
+        }
+        Collection<Bucket> window = buckets.subMap(from, true, BUCKET.floor(end), true).values();
+        Set<SeriesKey> keys = new HashSet<>();
+        for (Bucket bucket : window) {
+            bucket.collectCandidates(keys);
+        }
+        Map<SeriesKey, Long> totals = new HashMap<>();
+        for (SeriesKey key : keys) {
+            long hash = hash(key);
+            long total = 0;
+            for (Bucket bucket : window) {
+                total += bucket.estimate(hash);
+            }
+            totals.put(key, total);
+        }
+        List<ViewStatsDto> result = new ArrayList<>(totals.size());
+        totals.forEach((key, hits) -> result.add(new ViewStatsDto(key.app(), key.uri(), hits)));
+        result.sort(Comparator.comparing(ViewStatsDto::getHits).reversed());
+        return result.size() > limit ? List.copyOf(result.subList(0, limit)) : result;
+    }
+
+    private void add(SeriesKey key, LocalDateTime timestamp, long hits) {
+        LocalDateTime bucket = BUCKET.floor(timestamp);
+        if (bucket.isBefore(oldestBucket())) {
+            return;
+        }
+        buckets.computeIfAbsent(bucket, b -> new Bucket()).add(key, hash(key), hits);
+    }
+
+    private LocalDateTime oldestBucket() {
+        return BUCKET.floor(LocalDateTime.now().minus(retention));
+    }
+
+    private static long hash(SeriesKey key) {
+        return HyperLogLog.hash((key.app() + '\n' + key.uri()).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private final class Bucket {
+        private final CountMinSketch sketch = new CountMinSketch(width, depth);
+        private final Map<SeriesKey, Long> topCandidates = new HashMap<>();
+        private long minCandidate;
+
+        synchronized void add(SeriesKey key, long hash, long hits) {
+            long estimate = sketch.add(hash, hits);
+            if (topCandidates.containsKey(key) || topCandidates.size() < candidates) {
+                topCandidates.put(key, estimate);
+                return;
+            }
+            // estimates only grow, so the cached minimum is a lower bound and is rechecked before evicting
+            if (estimate <= minCandidate) {
+                return;
+            }
+            SeriesKey weakest = null;
+            long weakestEstimate = Long.MAX_VALUE;
+            for (Map.Entry<SeriesKey, Long> candidate : topCandidates.entrySet()) {
+                if (candidate.getValue() < weakestEstimate) {
+                    weakest = candidate.getKey();
+                    weakestEstimate = candidate.getValue();
+                }
+            }
+            minCandidate = weakestEstimate;
+            if (estimate > weakestEstimate) {
+                topCandidates.remove(weakest);
+                topCandidates.put(key, estimate);
+            }
+        }
+
+        synchronized long estimate(long hash) {
+            return sketch.estimate(hash);
+        }
+
+        synchronized void collectCandidates(Set<SeriesKey> keys) {
+            keys.addAll(topCandidates.keySet());
+        }
+    }
+}
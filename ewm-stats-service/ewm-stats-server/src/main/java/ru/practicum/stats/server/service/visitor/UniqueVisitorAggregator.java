@@ -0,0 +1,41 @@
+package ru.practicum.stats.server.service.visitor;
+
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.UniqueVisitorRepository;
+import ru.practicum.stats.server.service.ingest.HitAggregator;
+
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Keeps the all-time (app, uri, ip) seen-set and the per-uri unique visitor counters up to date.
+ */
+@Component
+@RequiredArgsConstructor
+public class UniqueVisitorAggregator implements HitAggregator {
+
+    private static final Comparator<EndpointHit> ORDER = Comparator.comparing(EndpointHit::getUriId)
+            .thenComparing(EndpointHit::getAppId)
+            .thenComparing(EndpointHit::getIp);
+
+    private final UniqueVisitorRepository visitorRepository;
+
+    @Override
+    public void apply(List<EndpointHit> hits) {
+        if (hits.isEmpty()) {
+            return;
+        }
+        List<EndpointHit> sorted = hits.stream().sorted(ORDER).toList();
+        Integer[] appIds = new Integer[sorted.size()];
+        Integer[] uriIds = new Integer[sorted.size()];
+        String[] ips = new String[sorted.size()];
+        for (int i = 0; i < sorted.size(); i++) {
+            appIds[i] = sorted.get(i).getAppId();
+            uriIds[i] = sorted.get(i).getUriId();
+            ips[i] = sorted.get(i).getIp();
+        }
+        visitorRepository.addVisitors(appIds, uriIds, ips);
+    }
+}
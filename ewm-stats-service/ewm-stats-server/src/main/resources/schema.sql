@@ -1,13 +1,216 @@
-CREATE TABLE IF NOT EXISTS endpoint_hits (
-    id BIGINT GENERATED BY DEFAULT AS IDENTITY PRIMARY KEY,
-    app VARCHAR(255) NOT NULL,
-    uri VARCHAR(512) NOT NULL,
-    ip VARCHAR(45) NOT NULL,
-    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL
+-- Dictionaries for the app and uri columns: hit tables store these small ids instead of strings.
+CREATE TABLE IF NOT EXISTS hit_apps (
+    id SMALLSERIAL PRIMARY KEY,
+    name VARCHAR(255) NOT NULL UNIQUE
+);
+
+CREATE TABLE IF NOT EXISTS hit_uris (
+    id SERIAL PRIMARY KEY,
+    name VARCHAR(512) NOT NULL UNIQUE
 );
 
+-- Range-partitioned by timestamp; HitPartitionManager creates and drops the partitions.
+-- The default partition catches hits outside the existing partitions until they are moved.
+CREATE TABLE IF NOT EXISTS endpoint_hits (
+    id BIGSERIAL NOT NULL,
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    timestamp TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    PRIMARY KEY (id, timestamp)
+) PARTITION BY RANGE (timestamp);
+
+CREATE TABLE IF NOT EXISTS endpoint_hits_default PARTITION OF endpoint_hits DEFAULT;
+
 CREATE INDEX IF NOT EXISTS idx_endpoint_hits_timestamp
 ON endpoint_hits(timestamp);
 
-CREATE INDEX IF NOT EXISTS idx_endpoint_hits_app_timestamp
-ON endpoint_hits(app, timestamp);
\ No newline at end of file
+CREATE INDEX IF NOT EXISTS idx_endpoint_hits_uri_timestamp
+ON endpoint_hits(uri_id, timestamp);
+
+-- Time before which retention has dropped hits from every bucketed table; NULL while nothing was dropped.
+CREATE TABLE IF NOT EXISTS hit_retention (
+    id INTEGER PRIMARY KEY,
+    dropped_before TIMESTAMP WITHOUT TIME ZONE
+);
+
+INSERT INTO hit_retention (id, dropped_before)
+VALUES (1, NULL)
+ON CONFLICT (id) DO NOTHING;
+
+-- Per-bucket hit counts kept in step with endpoint_hits at ingest time.
+-- Each backfill runs only while its rollup table is still empty.
+CREATE TABLE IF NOT EXISTS hit_rollup_minute (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_minute_uri_bucket
+ON hit_rollup_minute(uri_id, bucket);
+
+INSERT INTO hit_rollup_minute (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, date_trunc('minute', timestamp), COUNT(*)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_minute)
+GROUP BY app_id, uri_id, date_trunc('minute', timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_hour_uri_bucket
+ON hit_rollup_hour(uri_id, bucket);
+
+INSERT INTO hit_rollup_hour (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, date_trunc('hour', timestamp), COUNT(*)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_hour)
+GROUP BY app_id, uri_id, date_trunc('hour', timestamp);
+
+CREATE TABLE IF NOT EXISTS hit_rollup_day (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    hits BIGINT NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_rollup_day_uri_bucket
+ON hit_rollup_day(uri_id, bucket);
+
+INSERT INTO hit_rollup_day (app_id, uri_id, bucket, hits)
+SELECT app_id, uri_id, date_trunc('day', timestamp), COUNT(*)
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_rollup_day)
+GROUP BY app_id, uri_id, date_trunc('day', timestamp);
+
+-- HyperLogLog sketches of visitor IPs for approximate unique counts (?approximate=true).
+-- Sketches only cover hits from "since" onwards; older ranges are read from endpoint_hits.
+CREATE TABLE IF NOT EXISTS hit_sketch_coverage (
+    id INTEGER PRIMARY KEY,
+    since TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+INSERT INTO hit_sketch_coverage (id, since)
+VALUES (1, date_trunc('hour', LOCALTIMESTAMP) + INTERVAL '1 hour')
+ON CONFLICT (id) DO NOTHING;
+
+CREATE TABLE IF NOT EXISTS hit_sketch_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_sketch_hour_uri_bucket
+ON hit_sketch_hour(uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_sketch_day (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    sketch BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_sketch_day_uri_bucket
+ON hit_sketch_day(uri_id, bucket);
+
+-- All-time unique visitors per (app, uri): a seen-set and a counter bumped for first visits only.
+CREATE TABLE IF NOT EXISTS hit_visitors (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    ip INET NOT NULL,
+    PRIMARY KEY (uri_id, app_id, ip)
+);
+
+INSERT INTO hit_visitors (app_id, uri_id, ip)
+SELECT DISTINCT app_id, uri_id, ip
+FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_visitors);
+
+CREATE TABLE IF NOT EXISTS hit_unique_totals (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    visitors BIGINT NOT NULL,
+    PRIMARY KEY (uri_id, app_id)
+);
+
+INSERT INTO hit_unique_totals (app_id, uri_id, visitors)
+SELECT app_id, uri_id, COUNT(*)
+FROM hit_visitors
+WHERE NOT EXISTS (SELECT 1 FROM hit_unique_totals)
+GROUP BY app_id, uri_id;
+
+CREATE TABLE IF NOT EXISTS hit_distinct_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    ip INET NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id, ip)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_distinct_hour_uri_bucket
+ON hit_distinct_hour(uri_id, bucket);
+
+-- Dense visitor ids for the bitmaps below. Every stored ip gets one, including those hits that predate the table.
+CREATE TABLE IF NOT EXISTS hit_visitor_ids (
+    id SERIAL PRIMARY KEY,
+    ip INET NOT NULL UNIQUE
+);
+
+INSERT INTO hit_visitor_ids (ip)
+SELECT ip FROM endpoint_hits
+WHERE NOT EXISTS (SELECT 1 FROM hit_visitor_ids)
+UNION
+SELECT ip FROM hit_distinct_hour
+WHERE NOT EXISTS (SELECT 1 FROM hit_visitor_ids)
+ON CONFLICT (ip) DO NOTHING;
+
+CREATE TABLE IF NOT EXISTS hit_bitmap_coverage (
+    id INTEGER PRIMARY KEY,
+    since TIMESTAMP WITHOUT TIME ZONE NOT NULL
+);
+
+INSERT INTO hit_bitmap_coverage (id, since)
+VALUES (1, date_trunc('hour', LOCALTIMESTAMP) + INTERVAL '1 hour')
+ON CONFLICT (id) DO NOTHING;
+
+CREATE TABLE IF NOT EXISTS hit_bitmap_hour (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_bitmap_hour_uri_bucket
+ON hit_bitmap_hour(uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_bitmap_day (
+    app_id SMALLINT NOT NULL,
+    uri_id INTEGER NOT NULL,
+    bucket TIMESTAMP WITHOUT TIME ZONE NOT NULL,
+    bitmap BYTEA NOT NULL,
+    PRIMARY KEY (bucket, app_id, uri_id)
+);
+
+CREATE INDEX IF NOT EXISTS idx_hit_bitmap_day_uri_bucket
+ON hit_bitmap_day(uri_id, bucket);
+
+CREATE TABLE IF NOT EXISTS hit_journal_checkpoint (
+    id INTEGER PRIMARY KEY,
+    position BIGINT NOT NULL
+);
+
+INSERT INTO hit_journal_checkpoint (id, position)
+VALUES (1, 0)
+ON CONFLICT (id) DO NOTHING;
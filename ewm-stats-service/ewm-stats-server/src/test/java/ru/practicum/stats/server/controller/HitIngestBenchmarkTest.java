@@ -0,0 +1,109 @@
+package ru.practicum.stats.server.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfSystemProperty;
+import ru.practicum.stats.dto.HitDto;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Throughput of {@code POST /hit} against {@code POST /hits/batch} on a running stats server, each driven by
+ * {@value #CLIENTS} concurrent clients. Run by hand against a disposable database, since it stores its hits:
+ * <pre>
+ * mvn test -Dtest=HitIngestBenchmarkTest -Dstats.benchmark.url=http://localhost:9090
+ * </pre>
+ * The hit count and batch size can be changed with {@code stats.benchmark.hits} and
+ * {@code stats.benchmark.batch-size}.
+ */
+@Tag("benchmark")
+@EnabledIfSystemProperty(named = "stats.benchmark.url", matches = ".+")
+class HitIngestBenchmarkTest {
+
+    private static final int CLIENTS = 16;
+
+    private final String serverUrl = System.getProperty("stats.benchmark.url");
+    private final int hits = Integer.getInteger("stats.benchmark.hits", 50_000);
+    private final int batchSize = Integer.getInteger("stats.benchmark.batch-size", 500);
+    private final ObjectMapper objectMapper = new ObjectMapper().findAndRegisterModules();
+    private final HttpClient httpClient = HttpClient.newHttpClient();
+    private final AtomicInteger sequence = new AtomicInteger();
+
+    @Test
+    void batchedIngestOutrunsSingleHits() throws Exception {
+        // warm both paths up, including the dictionary entries of the benchmark uris
+        run(hits / 10, 1, "/hit");
+        run(hits / 10, batchSize, "/hits/batch");
+
+        double single = run(hits, 1, "/hit");
+        double batched = run(hits, batchSize, "/hits/batch");
+
+        System.out.printf("single:  %,.0f hits/s%nbatched: %,.0f hits/s (batches of %d)%nspeedup: %.1fx%n",
+                single, batched, batchSize, batched / single);
+        assertThat(batched).isGreaterThan(single);
+    }
+
+    /**
+     * Sends {@code count} hits in requests of {@code perRequest} and returns hits stored per second.
+     */
+    private double run(int count, int perRequest, String path) throws Exception {
+        int requests = (count + perRequest - 1) / perRequest;
+        AtomicInteger next = new AtomicInteger();
+        long started = System.nanoTime();
+        try (ExecutorService clients = Executors.newFixedThreadPool(CLIENTS)) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int c = 0; c < CLIENTS; c++) {
+                futures.add(clients.submit(() -> {
+                    while (next.getAndIncrement() < requests) {
+                        post(path, perRequest == 1 ? hit() : batch(perRequest));
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        return (double) requests * perRequest / ((System.nanoTime() - started) / 1e9);
+    }
+
+    private void post(String path, Object body) throws Exception {
+        HttpRequest request = HttpRequest.newBuilder(URI.create(serverUrl + path))
+                .header("Content-Type", "application/json")
+                .POST(HttpRequest.BodyPublishers.ofByteArray(objectMapper.writeValueAsBytes(body)))
+                .build();
+        HttpResponse<Void> response = httpClient.send(request, HttpResponse.BodyHandlers.discarding());
+        assertThat(response.statusCode()).as("POST %s", path).isEqualTo(201);
+    }
+
+    private List<HitDto> batch(int size) {
+        List<HitDto> batch = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            batch.add(hit());
+        }
+        return batch;
+    }
+
+    private HitDto hit() {
+        int n = sequence.incrementAndGet();
+        HitDto hit = new HitDto();
+        hit.setApp("ingest-benchmark");
+        hit.setUri("/events/" + n % 1_000);
+        hit.setIp("10." + (n >>> 16 & 255) + "." + (n >>> 8 & 255) + "." + (n & 255));
+        hit.setTimestamp(LocalDateTime.now().withNano(0));
+        return hit;
+    }
+}
@@ -0,0 +1,256 @@
+package ru.practicum.stats.server.service.ingest;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.util.unit.DataSize;
+import ru.practicum.stats.server.model.EndpointHit;
+import ru.practicum.stats.server.repository.JournalCheckpointRepository;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Kills a process running the journaled ingest while it is applying a batch, then restarts ingest from the
+ * same journal and checks that every acknowledged hit ends up stored exactly once. Also checks that a hit the
+ * database refuses is skipped without holding back the hits after it.
+ */
+class JournalHitIngestorRecoveryTest {
+
+    private static final String ACKED = "ACKED ";
+    private static final String FLUSHING = "FLUSHING";
+    private static final int HITS = 20_000;
+    private static final int FLUSHES_BEFORE_KILL = 5;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void killedMidFlushLosesAndDuplicatesNothing() throws Exception {
+        Path journal = directory.resolve("journal");
+        Path store = directory.resolve("store");
+
+        Process process = new ProcessBuilder(Path.of(System.getProperty("java.home"), "bin", "java").toString(),
+                "-cp", System.getProperty("java.class.path"),
+                Crasher.class.getName(), journal.toString(), store.toString())
+                .redirectErrorStream(true)
+                .start();
+        int lastAcked = -1;
+        int flushes = 0;
+        try (BufferedReader output = new BufferedReader(
+                new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = output.readLine()) != null) {
+                if (line.startsWith(ACKED)) {
+                    lastAcked = Integer.parseInt(line.substring(ACKED.length()));
+                } else if (line.equals(FLUSHING) && ++flushes == FLUSHES_BEFORE_KILL) {
+                    process.destroyForcibly();
+                }
+            }
+        }
+        assertThat(process.waitFor(30, TimeUnit.SECONDS)).isTrue();
+        assertThat(flushes).isEqualTo(FLUSHES_BEFORE_KILL);
+        assertThat(lastAcked).isPositive();
+
+        FileHitStore recovered = FileHitStore.open(store, Duration.ZERO);
+        JournalHitIngestor ingestor = ingestor(recovered, journal);
+        ingestor.start();
+        ingestor.stop();
+
+        List<Integer> stored = recovered.hits();
+        assertThat(new HashSet<>(stored)).hasSameSizeAs(stored);
+        Set<Integer> acked = new HashSet<>();
+        for (int i = 0; i <= lastAcked; i++) {
+            acked.add(i);
+        }
+        assertThat(stored).containsAll(acked);
+        // a hit appended just before the kill may be stored without its acknowledgement having been seen
+        assertThat(stored).allMatch(i -> i <= lastAcked + 1);
+    }
+
+    @Test
+    void refusedHitIsSkippedAndTheRestApplied() throws Exception {
+        FileHitStore store = FileHitStore.open(directory.resolve("store"), Duration.ZERO);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        JournalHitIngestor ingestor = ingestor(store, directory.resolve("journal"), registry);
+        ingestor.start();
+        int refused = 137;
+        for (int i = 0; i < 500; i++) {
+            EndpointHit hit = hit(i);
+            if (i == refused) {
+                hit.setUri(hit.getUri() + "/" + "x".repeat(FileHitStore.MAX_URI_LENGTH));
+            }
+            ingestor.ingest(List.of(hit));
+        }
+        ingestor.stop();
+
+        List<Integer> expected = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            if (i != refused) {
+                expected.add(i);
+            }
+        }
+        assertThat(store.hits()).containsExactlyElementsOf(expected);
+        assertThat(registry.get("stats.ingest.journal.rejected").counter().count()).isEqualTo(1);
+    }
+
+    private static JournalHitIngestor ingestor(FileHitStore store, Path journal) {
+        return ingestor(store, journal, new SimpleMeterRegistry());
+    }
+
+    private static JournalHitIngestor ingestor(FileHitStore store, Path journal, MeterRegistry registry) {
+        return new JournalHitIngestor(store.recorder(), store.checkpoints(), registry,
+                journal, DataSize.ofKilobytes(4), false, 50, Duration.ofMillis(10), Duration.ofSeconds(20),
+                WriteMethod.INSERT, DataSize.ofMegabytes(64));
+    }
+
+    private static EndpointHit hit(int i) {
+        return EndpointHit.builder()
+                .app("ewm-main-service")
+                .uri("/events/" + i)
+                .ip("192.168.0." + i % 256)
+                .timestamp(LocalDateTime.of(2024, 1, 1, 0, 0).plusSeconds(i))
+                .build();
+    }
+
+    /**
+     * Ingests hits one by one, reporting each acknowledgement, with every batch taking a while to commit.
+     */
+    static class Crasher {
+
+        public static void main(String[] args) throws Exception {
+            FileHitStore store = FileHitStore.open(Path.of(args[1]), Duration.ofMillis(50));
+            JournalHitIngestor ingestor = ingestor(store, Path.of(args[0]));
+            ingestor.start();
+            for (int i = 0; i < HITS; i++) {
+                ingestor.ingest(List.of(hit(i)));
+                System.out.println(ACKED + i);
+            }
+            Thread.sleep(Long.MAX_VALUE);
+        }
+    }
+
+    /**
+     * Stands in for the database: hits and the journal checkpoint are committed together by atomically
+     * replacing one file, so a kill leaves either the previous commit or the next one. Like
+     * {@code hit_uris.name}, a uri is limited to {@value #MAX_URI_LENGTH} characters.
+     */
+    static class FileHitStore {
+
+        static final int MAX_URI_LENGTH = 512;
+
+        private final Path file;
+        private final Duration commitDelay;
+        private final List<Integer> hits = new ArrayList<>();
+        private long checkpoint;
+        private long pendingCheckpoint;
+        private boolean inTransaction;
+
+        private FileHitStore(Path file, Duration commitDelay) {
+            this.file = file;
+            this.commitDelay = commitDelay;
+        }
+
+        static FileHitStore open(Path file, Duration commitDelay) throws IOException {
+            FileHitStore store = new FileHitStore(file, commitDelay);
+            if (Files.exists(file)) {
+                List<String> lines = Files.readAllLines(file);
+                store.checkpoint = Long.parseLong(lines.get(0));
+                lines.subList(1, lines.size()).forEach(line -> store.hits.add(Integer.parseInt(line)));
+            }
+            return store;
+        }
+
+        synchronized List<Integer> hits() {
+            return List.copyOf(hits);
+        }
+
+        HitRecorder recorder() {
+            return new HitRecorder(null, null, List.of(), List.of(), null) {
+                @Override
+                public void record(List<EndpointHit> batch, WriteMethod writeMethod, Runnable inTransaction) {
+                    commit(batch, inTransaction);
+                }
+            };
+        }
+
+        JournalCheckpointRepository checkpoints() {
+            return new JournalCheckpointRepository(null) {
+                @Override
+                public long load() {
+                    synchronized (FileHitStore.this) {
+                        return checkpoint;
+                    }
+                }
+
+                @Override
+                public void save(long position) {
+                    synchronized (FileHitStore.this) {
+                        pendingCheckpoint = position;
+                        // outside a transaction the update commits on its own
+                        if (!inTransaction) {
+                            persist(List.of());
+                        }
+                    }
+                }
+            };
+        }
+
+        private synchronized void commit(List<EndpointHit> batch, Runnable inTransaction) {
+            for (EndpointHit hit : batch) {
+                if (hit.getUri().length() > MAX_URI_LENGTH) {
+                    throw new DataIntegrityViolationException("value too long for type character varying(512)");
+                }
+            }
+            this.inTransaction = true;
+            try {
+                inTransaction.run();
+            } finally {
+                this.inTransaction = false;
+            }
+            if (!commitDelay.isZero()) {
+                System.out.println(FLUSHING);
+                try {
+                    Thread.sleep(commitDelay.toMillis());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new IllegalStateException("Interrupted before commit", e);
+                }
+            }
+            persist(batch);
+        }
+
+        private void persist(List<EndpointHit> batch) {
+            List<String> lines = new ArrayList<>();
+            lines.add(Long.toString(pendingCheckpoint));
+            hits.forEach(i -> lines.add(i.toString()));
+            batch.forEach(hit -> lines.add(hit.getUri().substring("/events/".length())));
+            try {
+                Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+                Files.write(temp, lines);
+                Files.move(temp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            checkpoint = pendingCheckpoint;
+            batch.forEach(hit -> hits.add(Integer.parseInt(hit.getUri().substring("/events/".length()))));
+        }
+    }
+}
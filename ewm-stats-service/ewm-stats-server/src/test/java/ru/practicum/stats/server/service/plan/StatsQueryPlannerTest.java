@@ -0,0 +1,50 @@
+package ru.practicum.stats.server.service.plan;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import ru.practicum.stats.server.service.compaction.HitCompactor;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Which ranges reaching into compacted hours can still be answered exactly.
+ */
+class StatsQueryPlannerTest {
+
+    private static final LocalDateTime OLD = LocalDateTime.of(2024, 1, 1, 12, 0);
+    private static final LocalDateTime RECENT = LocalDateTime.now();
+
+    private final StatsQueryPlanner planner = planner(Duration.ofDays(1));
+
+    @Test
+    void totalsBeforeTheCutoffMustCoverWholeMinutes() {
+        assertThat(planner.splitsCompactedMinute(OLD, OLD.plusMinutes(5).minusSeconds(1))).isFalse();
+        assertThat(planner.splitsCompactedMinute(OLD, RECENT)).isFalse();
+        assertThat(planner.splitsCompactedMinute(OLD.plusSeconds(30), RECENT)).isTrue();
+        assertThat(planner.splitsCompactedMinute(OLD, OLD.plusMinutes(5))).isTrue();
+        assertThat(planner.splitsCompactedMinute(OLD, OLD.plusMinutes(5).plusSeconds(30))).isTrue();
+    }
+
+    @Test
+    void uniqueCountsBeforeTheCutoffMustCoverWholeHours() {
+        assertThat(planner.splitsCompactedHour(OLD, OLD.plusHours(2))).isFalse();
+        assertThat(planner.splitsCompactedHour(OLD, OLD.plusHours(2).minusSeconds(1))).isFalse();
+        assertThat(planner.splitsCompactedHour(OLD.plusMinutes(1), RECENT)).isTrue();
+        assertThat(planner.splitsCompactedHour(OLD, OLD.plusHours(2).plusMinutes(1))).isTrue();
+    }
+
+    @Test
+    void anyRangeIsExactWithoutCompaction() {
+        StatsQueryPlanner uncompacted = planner(Duration.ZERO);
+        assertThat(uncompacted.splitsCompactedMinute(OLD.plusSeconds(30), OLD.plusMinutes(5))).isFalse();
+        assertThat(uncompacted.splitsCompactedHour(OLD.plusMinutes(1), OLD.plusHours(2).plusMinutes(1))).isFalse();
+    }
+
+    private static StatsQueryPlanner planner(Duration compactionAge) {
+        HitCompactor compactor = new HitCompactor(null, null, new SimpleMeterRegistry(), compactionAge, 10_000);
+        return new StatsQueryPlanner(null, null, null, null, compactor, null, false, 60, 8);
+    }
+}
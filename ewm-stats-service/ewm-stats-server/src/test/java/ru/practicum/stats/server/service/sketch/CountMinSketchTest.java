@@ -0,0 +1,69 @@
+package ru.practicum.stats.server.service.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the documented guarantees on a skewed stream of a million adds over 100 000 keys: no estimate is
+ * below the true count, and all but {@code e^-depth} of them are over by at most {@code e/width} of the total.
+ */
+class CountMinSketchTest {
+
+    private static final int WIDTH = 2048;
+    private static final int DEPTH = 4;
+    private static final int KEYS = 100_000;
+    private static final int ADDS = 1_000_000;
+
+    @Test
+    void estimatesNeverUndercountAndRarelyOvercountByMoreThanTheBound() {
+        CountMinSketch sketch = new CountMinSketch(WIDTH, DEPTH);
+        long[] counts = new long[KEYS];
+        Random random = new Random(42);
+        for (int i = 0; i < ADDS; i++) {
+            // cubing a uniform value puts most adds on a few keys, like hits on popular events
+            int key = (int) (Math.pow(random.nextDouble(), 3) * KEYS);
+            counts[key]++;
+            assertThat(sketch.add(hash(key), 1)).isGreaterThanOrEqualTo(counts[key]);
+        }
+        assertThat(sketch.total()).isEqualTo(ADDS);
+
+        double bound = Math.E / WIDTH * ADDS;
+        int beyondBound = 0;
+        for (int key = 0; key < KEYS; key++) {
+            long estimate = sketch.estimate(hash(key));
+            assertThat(estimate).isGreaterThanOrEqualTo(counts[key]);
+            if (estimate - counts[key] > bound) {
+                beyondBound++;
+            }
+        }
+        assertThat((double) beyondBound / KEYS).isLessThanOrEqualTo(Math.exp(-DEPTH));
+    }
+
+    @Test
+    void addsWeightedCounts() {
+        CountMinSketch sketch = new CountMinSketch(WIDTH, DEPTH);
+        assertThat(sketch.add(hash(1), 5)).isEqualTo(5);
+        assertThat(sketch.add(hash(1), 7)).isEqualTo(12);
+        assertThat(sketch.estimate(hash(1))).isEqualTo(12);
+        assertThat(sketch.estimate(hash(2))).isZero();
+        assertThat(sketch.total()).isEqualTo(12);
+    }
+
+    @Test
+    void rejectsEmptyDimensions() {
+        assertThatThrownBy(() -> new CountMinSketch(0, DEPTH)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new CountMinSketch(WIDTH, 0)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Hashed the way the heavy-hitter tracker hashes its series keys.
+     */
+    private static long hash(int key) {
+        return HyperLogLog.hash(("ewm-main-service\n/events/" + key).getBytes(StandardCharsets.UTF_8));
+    }
+}
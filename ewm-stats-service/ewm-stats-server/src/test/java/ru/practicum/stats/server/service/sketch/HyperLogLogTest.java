@@ -0,0 +1,93 @@
+package ru.practicum.stats.server.service.sketch;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the estimates of the default 4096-register sketch against its documented standard error of
+ * {@code 1.04 / sqrt(4096)}, about 1.6%, on a million distinct IPv4 addresses at a time.
+ */
+class HyperLogLogTest {
+
+    private static final double STANDARD_ERROR = 1.04 / Math.sqrt(1 << HyperLogLog.DEFAULT_PRECISION);
+    private static final int VISITORS = 1_000_000;
+    private static final int SKETCHES = 20;
+
+    @Test
+    void estimatesStayWithinTheStandardError() {
+        assertThat(rootMeanSquareError(VISITORS, SKETCHES)).isLessThan(1.5 * STANDARD_ERROR);
+    }
+
+    /**
+     * While most registers are empty the estimate comes from linear counting, which is better still.
+     */
+    @Test
+    void smallCountsStayWithinTheStandardError() {
+        assertThat(new HyperLogLog().cardinality()).isZero();
+        assertThat(rootMeanSquareError(1_000, 100)).isLessThan(STANDARD_ERROR);
+    }
+
+    @Test
+    void mergeEqualsTheSketchOfTheUnion() {
+        HyperLogLog merged = sketchOf(0, 600_000);
+        merged.merge(sketchOf(400_000, VISITORS));
+
+        HyperLogLog union = sketchOf(0, VISITORS);
+        assertThat(merged.toBytes()).isEqualTo(union.toBytes());
+        assertThat(Math.abs(relativeError(merged.cardinality(), VISITORS))).isLessThan(4 * STANDARD_ERROR);
+    }
+
+    @Test
+    void mergeRejectsAnotherPrecision() {
+        assertThatThrownBy(() -> new HyperLogLog().merge(new HyperLogLog(10)))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    @Test
+    void bytesRoundTrip() {
+        HyperLogLog sketch = sketchOf(0, VISITORS);
+        byte[] bytes = sketch.toBytes();
+
+        HyperLogLog restored = HyperLogLog.fromBytes(bytes);
+        assertThat(restored.toBytes()).isEqualTo(bytes);
+        assertThat(restored.cardinality()).isEqualTo(sketch.cardinality());
+        assertThat(HyperLogLog.fromBytes(new byte[0]).cardinality()).isZero();
+        assertThatThrownBy(() -> HyperLogLog.fromBytes(new byte[]{12, 0, 0}))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * Error over {@code sketches} disjoint sets of {@code visitors} addresses, none of them far off.
+     */
+    private static double rootMeanSquareError(int visitors, int sketches) {
+        double squares = 0;
+        for (int s = 0; s < sketches; s++) {
+            double error = relativeError(sketchOf(s * visitors, (s + 1) * visitors).cardinality(), visitors);
+            assertThat(Math.abs(error)).isLessThan(4 * STANDARD_ERROR);
+            squares += error * error;
+        }
+        return Math.sqrt(squares / sketches);
+    }
+
+    private static HyperLogLog sketchOf(int from, int to) {
+        HyperLogLog sketch = new HyperLogLog();
+        for (int i = from; i < to; i++) {
+            sketch.add(ip(i));
+        }
+        return sketch;
+    }
+
+    /**
+     * The {@code i}-th IPv4 address from 1.0.0.0 on, in the binary form the aggregator adds.
+     */
+    private static byte[] ip(int i) {
+        int address = i + (1 << 24);
+        return new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address};
+    }
+
+    private static double relativeError(long estimate, long actual) {
+        return (double) (estimate - actual) / actual;
+    }
+}